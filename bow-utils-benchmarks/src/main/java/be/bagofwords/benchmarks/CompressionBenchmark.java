@@ -0,0 +1,64 @@
+package be.bagofwords.benchmarks;
+
+import be.bagofwords.util.CompressionCodec;
+import be.bagofwords.util.CompressionCodecs;
+import be.bagofwords.util.IOUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compression of 1 MB of text-like data, as sent by SocketConnection for large values
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompressionBenchmark {
+
+    @Param({"deflate", "lz4", "snappy"})
+    public String codecName;
+
+    private CompressionCodec codec;
+    private byte[] input;
+    private byte[] compressed;
+
+    @Setup
+    public void setup() {
+        switch (codecName) {
+            case "deflate":
+                codec = CompressionCodecs.DEFLATE;
+                break;
+            case "lz4":
+                codec = CompressionCodecs.LZ4;
+                break;
+            case "snappy":
+                codec = CompressionCodecs.SNAPPY;
+                break;
+            default:
+                throw new RuntimeException("Unknown codec " + codecName);
+        }
+        Random random = new Random(1);
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 1024 * 1024) {
+            sb.append("{\"word\":\"w").append(random.nextInt(5000)).append("\",\"count\":").append(random.nextInt(100)).append("}");
+        }
+        input = sb.toString().getBytes();
+        compressed = IOUtils.compressBytes(input, codec);
+    }
+
+    @Benchmark
+    public byte[] compressBytes() {
+        return IOUtils.compressBytes(input, codec);
+    }
+
+    @Benchmark
+    public byte[] uncompressBytes() {
+        return IOUtils.uncompressBytes(compressed);
+    }
+
+}
@@ -0,0 +1,85 @@
+package be.bagofwords.benchmarks;
+
+import be.bagofwords.counts.ConcurrentCounter;
+import be.bagofwords.counts.Counter;
+import be.bagofwords.counts.Counters;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counters incremented by 4 threads at the same time, and merging the counters of many workers
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CounterBenchmark {
+
+    private static final int NUM_OF_KEYS = 1000;
+
+    private Counter<Integer> counter;
+    private ConcurrentCounter<Integer> concurrentCounter;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        counter = new Counter<>();
+        concurrentCounter = new ConcurrentCounter<>();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void counterInc() {
+        counter.inc(ThreadLocalRandom.current().nextInt(NUM_OF_KEYS));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void concurrentCounterInc() {
+        concurrentCounter.inc(ThreadLocalRandom.current().nextInt(NUM_OF_KEYS));
+    }
+
+    @State(Scope.Thread)
+    public static class MergeState {
+
+        @Param({"64"})
+        public int numOfCounters;
+
+        public List<Counter<Integer>> counters;
+
+        @Setup(Level.Invocation)
+        public void setup() {
+            Random random = new Random(1);
+            counters = new ArrayList<>();
+            for (int i = 0; i < numOfCounters; i++) {
+                Counter<Integer> counter = new Counter<>();
+                for (int j = 0; j < 10000; j++) {
+                    counter.inc(random.nextInt(100000));
+                }
+                counters.add(counter);
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Counter<Integer> mergeAll(MergeState state) {
+        return Counters.mergeAll(state.counters);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Counter<Integer> mergeAllSequentially(MergeState state) {
+        return Counters.mergeAllSequentially(state.counters);
+    }
+
+}
@@ -0,0 +1,47 @@
+package be.bagofwords.benchmarks;
+
+import be.bagofwords.util.DataLock;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DataLockBenchmark {
+
+    private DataLock dataLock;
+
+    @Setup
+    public void setup() {
+        dataLock = new DataLock();
+    }
+
+    @Benchmark
+    public void lockWriteUncontended() {
+        long key = ThreadLocalRandom.current().nextLong();
+        dataLock.lockWrite(key);
+        dataLock.unlockWrite(key);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void lockWrite() {
+        long key = ThreadLocalRandom.current().nextLong();
+        dataLock.lockWrite(key);
+        dataLock.unlockWrite(key);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void lockRead() {
+        long key = ThreadLocalRandom.current().nextLong();
+        dataLock.lockRead(key);
+        dataLock.unlockRead(key);
+    }
+
+}
@@ -0,0 +1,45 @@
+package be.bagofwords.benchmarks;
+
+import be.bagofwords.util.HashUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HashUtilsBenchmark {
+
+    @Param({"8", "64", "1024"})
+    public int length;
+
+    private String string;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        string = sb.toString();
+    }
+
+    @Benchmark
+    public long hashCodeOfString() {
+        return HashUtils.hashCode(string);
+    }
+
+    @Benchmark
+    public int integerHashCode() {
+        return HashUtils.integerHashCode(string);
+    }
+
+    @Benchmark
+    public long randomDistributeHash() {
+        return HashUtils.randomDistributeHash(string.length());
+    }
+
+}
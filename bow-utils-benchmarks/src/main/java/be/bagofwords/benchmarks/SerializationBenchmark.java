@@ -0,0 +1,96 @@
+package be.bagofwords.benchmarks;
+
+import be.bagofwords.counts.Counter;
+import be.bagofwords.util.SerializationUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip of a value through {@link SerializationUtils#objectToBytesCheckForNull(Object, Class)} and
+ * {@link SerializationUtils#bytesToObjectCheckForNull(byte[], Class, Class[])}, per type of value.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    @Param({"long", "double", "string", "counter", "list", "map"})
+    public String type;
+
+    private Object value;
+    private Class objectClass;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        switch (type) {
+            case "long":
+                value = 123456789l;
+                objectClass = Long.class;
+                break;
+            case "double":
+                value = 0.123456789;
+                objectClass = Double.class;
+                break;
+            case "string":
+                value = "some string value of average length";
+                objectClass = String.class;
+                break;
+            case "counter":
+                Counter<String> counter = new Counter<>();
+                for (int i = 0; i < 100; i++) {
+                    counter.inc("word" + i, i);
+                }
+                value = counter;
+                objectClass = Counter.class;
+                break;
+            case "list":
+                List<Long> list = new ArrayList<>();
+                for (long i = 0; i < 100; i++) {
+                    list.add(i * 31);
+                }
+                value = list;
+                objectClass = List.class;
+                break;
+            case "map":
+                //a map with a value that has no codec, so it is written as JSON
+                Map<String, List<Integer>> map = new HashMap<>();
+                for (int i = 0; i < 20; i++) {
+                    List<Integer> values = new ArrayList<>();
+                    values.add(i);
+                    map.put("key" + i, values);
+                }
+                value = map;
+                objectClass = Map.class;
+                break;
+            default:
+                throw new RuntimeException("Unknown type " + type);
+        }
+        bytes = SerializationUtils.objectToBytesCheckForNull(value, objectClass);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return SerializationUtils.objectToBytesCheckForNull(value, objectClass);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return SerializationUtils.bytesToObjectCheckForNull(bytes, objectClass);
+    }
+
+    @Benchmark
+    public Object roundTrip() {
+        return SerializationUtils.bytesToObjectCheckForNull(SerializationUtils.objectToBytesCheckForNull(value, objectClass), objectClass);
+    }
+
+}
@@ -0,0 +1,49 @@
+package be.bagofwords.benchmarks;
+
+import be.bagofwords.text.WordIterator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WordIteratorBenchmark {
+
+    private static final String[] WORDS = {"the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog", "e.g.", "U.S.", "don't", "3.14", "well-known"};
+
+    private String text;
+    private Set<String> wordsWithPunct;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+            sb.append(random.nextInt(10) == 0 ? ". " : " ");
+        }
+        text = sb.toString();
+        wordsWithPunct = new HashSet<>();
+        Collections.addAll(wordsWithPunct, "e.g.", "U.S.");
+    }
+
+    @Benchmark
+    public int tokenize() {
+        int numOfWords = 0;
+        WordIterator iterator = new WordIterator(text, wordsWithPunct);
+        while (iterator.hasNext()) {
+            iterator.next();
+            numOfWords++;
+        }
+        return numOfWords;
+    }
+
+}
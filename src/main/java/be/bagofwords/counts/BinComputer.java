@@ -11,25 +11,88 @@ public class BinComputer {
 
     private final ArrayList<Double> allValues;
     private final int maxSize;
+    //Only used in streaming mode
+    private final QuantileSketch sketch;
 
     public BinComputer(int maxSize) {
+        this(maxSize, null);
+    }
+
+    private BinComputer(int maxSize, QuantileSketch sketch) {
         this.allValues = new ArrayList<>();
         this.maxSize = maxSize;
+        this.sketch = sketch;
+    }
+
+    /**
+     * Creates a bin computer that does not store all values but summarizes them in a {@link QuantileSketch}. It
+     * accepts an unbounded number of values in bounded memory, at the cost of approximate bins.
+     */
+
+    public static BinComputer createStreaming() {
+        return createStreaming(QuantileSketch.DEFAULT_K);
+    }
+
+    public static BinComputer createStreaming(int k) {
+        return new BinComputer(-1, new QuantileSketch(k));
     }
 
     public void addCount(double count) {
-        if (maxSize == -1 || allValues.size() < maxSize)
-            allValues.add(count);
+        if (sketch != null) {
+            sketch.add(count);
+        } else {
+            synchronized (this) {
+                if (maxSize == -1 || allValues.size() < maxSize)
+                    allValues.add(count);
+            }
+        }
+    }
+
+    /**
+     * Add all values of another bin computer, e.g. one that was filled by another worker
+     */
+
+    public void addAll(BinComputer other) {
+        if (sketch != null && other.sketch != null) {
+            sketch.addAll(other.sketch);
+        } else if (sketch == null && other.sketch == null) {
+            List<Double> otherValues;
+            synchronized (other) {
+                otherValues = new ArrayList<>(other.allValues);
+            }
+            for (Double value : otherValues) {
+                addCount(value);
+            }
+        } else {
+            throw new RuntimeException("Can not combine a streaming and a non-streaming bin computer");
+        }
     }
 
     public synchronized double[] getEquiDenseBins(int size) {
+        if (sketch != null) {
+            return sketch.getEquiDenseBorders(size);
+        }
         return NumUtils.getBorders(size, allValues);
     }
 
+    /**
+     * @return no borders if no values were added
+     */
+
     public synchronized double[] getEquiWidthBins(int size) {
-        Collections.sort(allValues);
-        double min = allValues.get(0);
-        double max = allValues.get(allValues.size() - 1);
+        if (sketch != null ? sketch.getCount() == 0 : allValues.isEmpty()) {
+            return new double[0];
+        }
+        double min;
+        double max;
+        if (sketch != null) {
+            min = sketch.getMin();
+            max = sketch.getMax();
+        } else {
+            Collections.sort(allValues);
+            min = allValues.get(0);
+            max = allValues.get(allValues.size() - 1);
+        }
         double binWidth = (max - min) / size;
         double[] borders = new double[size - 1];
         for (int i = 0; i < borders.length; i++) {
@@ -38,10 +101,41 @@ public class BinComputer {
         return borders;
     }
 
-    public int[] getBinCounts(double[] bins) {
+    /**
+     * In streaming mode, counts larger than Integer.MAX_VALUE are clamped, see {@link #getLongBinCounts(double[])}
+     */
+
+    public synchronized int[] getBinCounts(double[] bins) {
+        if (sketch != null) {
+            long[] longCounts = getLongBinCounts(bins);
+            int[] counts = new int[longCounts.length];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = (int) Math.min(longCounts[i], Integer.MAX_VALUE);
+            }
+            return counts;
+        }
         return getBinCounts(bins, allValues);
     }
 
+    public synchronized long[] getLongBinCounts(double[] bins) {
+        long[] counts = new long[bins.length + 1];
+        if (sketch != null) {
+            //approximate counts, based on the ranks of the borders
+            long prevRank = 0;
+            for (int i = 0; i < bins.length; i++) {
+                long rank = sketch.getRank(bins[i]);
+                counts[i] = rank - prevRank;
+                prevRank = rank;
+            }
+            counts[bins.length] = sketch.getCount() - prevRank;
+        } else {
+            for (Double val : allValues) {
+                counts[NumUtils.getBin(bins, val)]++;
+            }
+        }
+        return counts;
+    }
+
     public static int[] getBinCounts(double[] bins, List<Double> allValues) {
         int[] counts = new int[bins.length + 1];
         for (Double val : allValues) {
@@ -52,11 +146,16 @@ public class BinComputer {
     }
 
     public void printBins(double[] bins) {
-        int[] counts = getBinCounts(bins);
+        long[] counts = getLongBinCounts(bins);
         if (bins.length == 0) {
             boolean allSameValue = false;
             double sameVal = -1;
-            if (allValues.size() > 0) {
+            if (sketch != null) {
+                if (sketch.getCount() > 0 && sketch.getMin() == sketch.getMax()) {
+                    allSameValue = true;
+                    sameVal = sketch.getMin();
+                }
+            } else if (allValues.size() > 0) {
                 allSameValue = true;
                 sameVal = allValues.get(0);
                 for (Double value : allValues) {
@@ -84,11 +183,14 @@ public class BinComputer {
     }
 
     public ArrayList<Double> getAllValues() {
+        if (sketch != null) {
+            throw new RuntimeException("Values are not stored by a streaming bin computer");
+        }
         return allValues;
     }
 
     public boolean acceptsMoreData() {
-        return maxSize == -1 || maxSize > allValues.size();
+        return sketch != null || maxSize == -1 || maxSize > allValues.size();
     }
 
 }
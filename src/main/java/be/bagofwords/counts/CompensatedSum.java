@@ -0,0 +1,32 @@
+package be.bagofwords.counts;
+
+/**
+ * Running sum of doubles that keeps track of the rounding errors (Kahan-Babuska-Neumaier summation), so the sum of
+ * many small values to a large total stays accurate.
+ */
+
+class CompensatedSum {
+
+    private double sum;
+    private double compensation;
+
+    void add(double value) {
+        double newSum = sum + value;
+        if (Math.abs(sum) >= Math.abs(value)) {
+            compensation += (sum - newSum) + value;
+        } else {
+            compensation += (value - newSum) + sum;
+        }
+        sum = newSum;
+    }
+
+    double get() {
+        return sum + compensation;
+    }
+
+    void reset() {
+        sum = 0;
+        compensation = 0;
+    }
+
+}
@@ -0,0 +1,198 @@
+package be.bagofwords.counts;
+
+import be.bagofwords.util.Pair;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe alternative for {@link Counter}. Every key has its own {@link LongAdder} cell that is updated with CAS
+ * operations (and striped over multiple cells when a key is contended), so threads incrementing counts never block
+ * each other. The total is kept in a separate adder and does not require a scan over all keys.
+ * <p>
+ * Removing keys ({@link #remove(Object)}, {@link #trim(int)} and {@link #clear()}) waits until the running increments
+ * are finished, and increments that start during a removal wait until the removal is finished. The total therefore
+ * always equals the sum of the counts once all updates are done. Increments only announce themselves in a striped
+ * counter, so they do not contend with each other.
+ */
+
+public class ConcurrentCounter<T extends Object> {
+
+    private static final int NUM_OF_STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+    private static final int STRIPE_PADDING = 16;
+
+    private final ConcurrentHashMap<T, LongAdder> counts;
+    private final LongAdder total;
+    //number of running increments per stripe, padded so every stripe has its own cache line
+    private final AtomicIntegerArray runningIncrements = new AtomicIntegerArray(NUM_OF_STRIPES * STRIPE_PADDING);
+    private volatile boolean removing = false;
+
+    public ConcurrentCounter() {
+        counts = new ConcurrentHashMap<>();
+        total = new LongAdder();
+    }
+
+    public void inc(T s) {
+        inc(s, 1l);
+    }
+
+    public void inc(T s, long count) {
+        int stripe = ((int) Thread.currentThread().getId() & (NUM_OF_STRIPES - 1)) * STRIPE_PADDING;
+        runningIncrements.incrementAndGet(stripe);
+        try {
+            if (!removing) {
+                doInc(s, count);
+                return;
+            }
+        } finally {
+            runningIncrements.decrementAndGet(stripe);
+        }
+        synchronized (this) {
+            //wait until the removal is finished
+            doInc(s, count);
+        }
+    }
+
+    private void doInc(T s, long count) {
+        LongAdder cell = counts.get(s);
+        if (cell == null) {
+            LongAdder newCell = new LongAdder();
+            cell = counts.putIfAbsent(s, newCell);
+            if (cell == null) {
+                cell = newCell;
+            }
+        }
+        cell.add(count);
+        total.add(count);
+    }
+
+    public long get(T s) {
+        LongAdder cell = counts.get(s);
+        if (cell == null) {
+            return 0;
+        } else {
+            return cell.sum();
+        }
+    }
+
+    @JsonIgnore
+    public long getTotal() {
+        return total.sum();
+    }
+
+    public int size() {
+        return counts.size();
+    }
+
+    public Set<T> keySet() {
+        return counts.keySet();
+    }
+
+    public List<T> sortedKeys() {
+        //Take a snapshot of the counts, the comparator needs to be consistent while sorting
+        final Map<T, Long> snapshot = getSnapshot();
+        List<T> result = new ArrayList<>(snapshot.keySet());
+        Collections.sort(result, new Comparator<T>() {
+            @Override
+            public int compare(T o1, T o2) {
+                return -Long.compare(snapshot.get(o1), snapshot.get(o2));
+            }
+        });
+        return result;
+    }
+
+    public void addAll(ConcurrentCounter<T> other) {
+        for (Map.Entry<T, LongAdder> entry : other.counts.entrySet()) {
+            inc(entry.getKey(), entry.getValue().sum());
+        }
+    }
+
+    public void addAll(Counter<T> other) {
+        for (Map.Entry<T, Long> entry : other.entrySet()) {
+            inc(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public void trim(int maxSize) {
+        if (maxSize <= 0) {
+            throw new RuntimeException("Incorrect max size:" + maxSize);
+        }
+        if (size() > maxSize) {
+            List<T> sortedKeys = sortedKeys();
+            remove(sortedKeys.subList(maxSize, sortedKeys.size()));
+        }
+    }
+
+    public void remove(T s) {
+        remove(Collections.singletonList(s));
+    }
+
+    public void clear() {
+        remove(new ArrayList<>(counts.keySet()));
+    }
+
+    private synchronized void remove(Collection<T> keys) {
+        removing = true;
+        try {
+            //new increments see that we are removing and wait, so we only need to wait for the running increments
+            for (int i = 0; i < NUM_OF_STRIPES; i++) {
+                while (runningIncrements.get(i * STRIPE_PADDING) > 0) {
+                    Thread.yield();
+                }
+            }
+            for (T key : keys) {
+                LongAdder cell = counts.remove(key);
+                if (cell != null) {
+                    total.add(-cell.sum());
+                }
+            }
+        } finally {
+            removing = false;
+        }
+    }
+
+    /**
+     * @return a (non thread-safe) copy of the current counts
+     */
+
+    public Counter<T> toCounter() {
+        Counter<T> result = new Counter<>();
+        for (Map.Entry<T, LongAdder> entry : counts.entrySet()) {
+            result.set(entry.getKey(), entry.getValue().sum());
+        }
+        return result;
+    }
+
+    private Map<T, Long> getSnapshot() {
+        Map<T, Long> result = new HashMap<>(counts.size());
+        for (Map.Entry<T, LongAdder> entry : counts.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
+        }
+        return result;
+    }
+
+    //Serialization
+
+    public List<Pair<T, Long>> getValuesAsList() {
+        List<Pair<T, Long>> result = new ArrayList<>();
+        for (Map.Entry<T, LongAdder> entry : counts.entrySet()) {
+            result.add(new Pair<>(entry.getKey(), entry.getValue().sum()));
+        }
+        return result;
+    }
+
+    public void setValuesAsList(List<Pair<T, Long>> values) {
+        clear();
+        for (Pair<T, Long> value : values) {
+            inc(value.getFirst(), value.getSecond());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toCounter().toString();
+    }
+}
@@ -0,0 +1,189 @@
+package be.bagofwords.counts;
+
+import be.bagofwords.util.ByteArraySerializable;
+import be.bagofwords.util.SerializationUtils;
+
+/**
+ * Approximate counter for long keys (typically hashes computed with {@link be.bagofwords.util.HashUtils}) that uses a
+ * fixed amount of memory, independent of the number of distinct keys. With probability 1-delta, the estimated count of
+ * a key overestimates the true count by at most epsilon * getTotal(). Counts can never be underestimated.
+ * <p>
+ * With conservative update, only the cells that hold the current minimum are increased, which reduces the
+ * overestimation considerably, but then all counts need to be positive.
+ * <p>
+ * Not thread-safe: use one sketch per thread and merge them with {@link #addAll(CountMinSketch)}.
+ */
+
+public class CountMinSketch implements ByteArraySerializable {
+
+    private static final int HEADER_SIZE = 4 + 4 + 1 + 8;
+
+    private final int depth;
+    private final int width;
+    private final boolean conservativeUpdate;
+    private final long[] table;
+    private long total;
+
+    public CountMinSketch(double epsilon, double delta) {
+        this(epsilon, delta, true);
+    }
+
+    public CountMinSketch(double epsilon, double delta, boolean conservativeUpdate) {
+        this(getDepth(epsilon, delta), (int) Math.ceil(Math.E / epsilon), conservativeUpdate);
+    }
+
+    public CountMinSketch(int depth, int width, boolean conservativeUpdate) {
+        if (depth <= 0 || width <= 0 || (long) depth * width > Integer.MAX_VALUE) {
+            throw new RuntimeException("Incorrect depth " + depth + " or width " + width);
+        }
+        this.depth = depth;
+        this.width = width;
+        this.conservativeUpdate = conservativeUpdate;
+        this.table = new long[depth * width];
+    }
+
+    public CountMinSketch(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    public CountMinSketch(byte[] bytes, int offset, int length) {
+        this(readDepth(bytes, offset, length), SerializationUtils.bytesToInt(bytes, offset + 4), SerializationUtils.bytesToBoolean(bytes, offset + 8));
+        this.total = SerializationUtils.bytesToLong(bytes, offset + 9);
+        for (int i = 0; i < table.length; i++) {
+            table[i] = SerializationUtils.bytesToLong(bytes, offset + HEADER_SIZE + i * 8);
+        }
+    }
+
+    public void inc(long key) {
+        inc(key, 1l);
+    }
+
+    public void inc(long key, long count) {
+        long hash = OpenAddressing.mix(key);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        total += count;
+        if (conservativeUpdate) {
+            if (count < 0) {
+                throw new RuntimeException("Negative counts are not supported with conservative update");
+            }
+            long newCount = estimate(hash1, hash2) + count;
+            for (int row = 0; row < depth; row++) {
+                int ind = getInd(row, hash1, hash2);
+                if (table[ind] < newCount) {
+                    table[ind] = newCount;
+                }
+            }
+        } else {
+            for (int row = 0; row < depth; row++) {
+                table[getInd(row, hash1, hash2)] += count;
+            }
+        }
+    }
+
+    /**
+     * @return an estimate of the count of this key, which is never smaller than the true count
+     */
+
+    public long get(long key) {
+        long hash = OpenAddressing.mix(key);
+        return estimate((int) hash, (int) (hash >>> 32));
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public boolean isConservativeUpdate() {
+        return conservativeUpdate;
+    }
+
+    /**
+     * Add the counts of another sketch with the same dimensions, e.g. a sketch that was filled by another thread.
+     */
+
+    public void addAll(CountMinSketch other) {
+        if (other.depth != depth || other.width != width) {
+            throw new RuntimeException("Can not merge sketch of dimensions " + other.depth + "x" + other.width + " into sketch of dimensions " + depth + "x" + width);
+        }
+        for (int i = 0; i < table.length; i++) {
+            table[i] += other.table[i];
+        }
+        total += other.total;
+    }
+
+    public void clear() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = 0;
+        }
+        total = 0;
+    }
+
+    @Override
+    public byte[] toByteArray() {
+        byte[] result = new byte[HEADER_SIZE + table.length * 8];
+        SerializationUtils.intToBytes(depth, result, 0);
+        SerializationUtils.intToBytes(width, result, 4);
+        SerializationUtils.booleanToBytes(conservativeUpdate, result, 8);
+        SerializationUtils.longToBytes(total, result, 9);
+        for (int i = 0; i < table.length; i++) {
+            SerializationUtils.longToBytes(table[i], result, HEADER_SIZE + i * 8);
+        }
+        return result;
+    }
+
+    private long estimate(int hash1, int hash2) {
+        long result = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            result = Math.min(result, table[getInd(row, hash1, hash2)]);
+        }
+        return result;
+    }
+
+    /**
+     * Double hashing to compute an independent position in every row (Kirsch and Mitzenmacher, 2006)
+     */
+
+    private int getInd(int row, int hash1, int hash2) {
+        int combinedHash = hash1 + row * hash2;
+        return row * width + ((combinedHash & Integer.MAX_VALUE) % width);
+    }
+
+    /**
+     * Checks the length of serialized bytes against their header before the table is allocated, so a corrupt header can
+     * not allocate a huge table
+     */
+
+    private static int readDepth(byte[] bytes, int offset, int length) {
+        if (length < HEADER_SIZE) {
+            throw new RuntimeException("Expected at least " + HEADER_SIZE + " bytes but received " + length);
+        }
+        int depth = SerializationUtils.bytesToInt(bytes, offset);
+        int width = SerializationUtils.bytesToInt(bytes, offset + 4);
+        long expectedLength = HEADER_SIZE + (long) depth * width * 8;
+        if (length != expectedLength) {
+            throw new RuntimeException("Expected " + expectedLength + " bytes for depth " + depth + " and width " + width + " but received " + length);
+        }
+        return depth;
+    }
+
+    /**
+     * Checks epsilon and delta before they are used to allocate the table
+     */
+
+    private static int getDepth(double epsilon, double delta) {
+        if (!(epsilon > 0 && epsilon < 1 && delta > 0 && delta < 1)) {
+            throw new RuntimeException("Incorrect epsilon " + epsilon + " or delta " + delta + ", both should be between 0 and 1");
+        }
+        return (int) Math.ceil(Math.log(1 / delta));
+    }
+
+}
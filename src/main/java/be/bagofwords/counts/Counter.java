@@ -117,9 +117,17 @@ public class Counter<T extends Object> {
         counts.put(s, value);
     }
 
-    public void addAll(Counter<T> other) {
-        for (Map.Entry<T, Long> entry : other.entrySet()) {
-            inc(entry.getKey(), entry.getValue());
+    public synchronized void addAll(Counter<T> other) {
+        //Acquire the locks once for all values, instead of once per value in inc()
+        lock.acquireUninterruptibly(1000);
+        try {
+            for (Map.Entry<T, Long> entry : other.entrySet()) {
+                Long currValue = counts.get(entry.getKey());
+                counts.put(entry.getKey(), currValue == null ? entry.getValue() : currValue + entry.getValue());
+            }
+        } finally {
+            lock.release(1000);
+            cachedTotal = -1;
         }
     }
 
@@ -0,0 +1,103 @@
+package be.bagofwords.counts;
+
+import be.bagofwords.util.ConcurrencyUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+public class Counters {
+
+    /**
+     * Merge many counters (e.g. one per worker) in a parallel tree reduction: in every round, pairs of counters are
+     * merged in parallel, until only one counter remains. The smaller counter of every pair is merged into the larger
+     * one, so the given counters are modified.
+     */
+
+    public static <T> Counter<T> mergeAll(List<Counter<T>> counters) {
+        return mergeAll(counters, -1);
+    }
+
+    /**
+     * @param maxSize if positive, every merged counter is trimmed to the maxSize keys with the highest counts, to bound
+     *                the memory used while merging. Counts of keys near the cut-off are then approximate, since a key
+     *                can be trimmed from one counter before it is merged with its counts in other counters.
+     */
+
+    public static <T> Counter<T> mergeAll(List<Counter<T>> counters, int maxSize) {
+        ExecutorService executorService = ConcurrencyUtils.multiThreadedExecutor("merge-counters");
+        try {
+            return mergeAll(counters, maxSize, executorService);
+        } finally {
+            ConcurrencyUtils.terminateAndWaitForExecutorService(executorService, "merge-counters", 10);
+        }
+    }
+
+    public static <T> Counter<T> mergeAll(List<Counter<T>> counters, final int maxSize, ExecutorService executorService) {
+        if (counters.isEmpty()) {
+            return new Counter<>();
+        }
+        List<Counter<T>> remaining = new ArrayList<>(counters);
+        if (remaining.size() == 1 && maxSize > 0) {
+            remaining.get(0).trim(maxSize);
+        }
+        while (remaining.size() > 1) {
+            List<Future<Counter<T>>> merged = new ArrayList<>();
+            for (int i = 0; i + 1 < remaining.size(); i += 2) {
+                final Counter<T> first = remaining.get(i);
+                final Counter<T> second = remaining.get(i + 1);
+                merged.add(executorService.submit(new Callable<Counter<T>>() {
+                    @Override
+                    public Counter<T> call() {
+                        return merge(first, second, maxSize);
+                    }
+                }));
+            }
+            List<Counter<T>> nextRound = new ArrayList<>();
+            for (Future<Counter<T>> future : merged) {
+                nextRound.add(getResult(future));
+            }
+            if (remaining.size() % 2 == 1) {
+                nextRound.add(remaining.get(remaining.size() - 1));
+            }
+            remaining = nextRound;
+        }
+        return remaining.get(0);
+    }
+
+    /**
+     * Merge the counters one by one in a new counter, mainly useful as a reference for {@link #mergeAll(List)}
+     */
+
+    public static <T> Counter<T> mergeAllSequentially(List<Counter<T>> counters) {
+        Counter<T> result = new Counter<>();
+        for (Counter<T> counter : counters) {
+            result.addAll(counter);
+        }
+        return result;
+    }
+
+    private static <T> Counter<T> merge(Counter<T> first, Counter<T> second, int maxSize) {
+        Counter<T> larger = first.size() >= second.size() ? first : second;
+        Counter<T> smaller = larger == first ? second : first;
+        larger.addAll(smaller);
+        if (maxSize > 0) {
+            larger.trim(maxSize);
+        }
+        return larger;
+    }
+
+    private static <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Interrupted while merging counters", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to merge counters", e.getCause());
+        }
+    }
+
+}
@@ -0,0 +1,352 @@
+package be.bagofwords.counts;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.Arrays;
+
+/**
+ * Counter for primitive long keys (typically hashes computed with {@link be.bagofwords.util.HashUtils}). Keys and
+ * counts are stored in two parallel arrays with open addressing (linear probing), so incrementing a count never
+ * allocates objects. Not thread-safe: use one instance per thread and merge them with {@link #addAll(LongCounter)}.
+ */
+
+public class LongCounter {
+
+    private static final long EMPTY_KEY = 0;
+
+    private long[] keys;
+    private long[] counts;
+    private int sizeOfTable;
+    private int maxSizeOfTable;
+    //The empty key can not be stored in the table, we keep its count separately
+    private boolean hasEmptyKey;
+    private long countOfEmptyKey;
+    private long total;
+
+    public LongCounter() {
+        this(OpenAddressing.MIN_CAPACITY);
+    }
+
+    public LongCounter(int expectedSize) {
+        allocate(OpenAddressing.capacityFor(expectedSize));
+    }
+
+    public void inc(long key) {
+        inc(key, 1l);
+    }
+
+    public void inc(long key, long count) {
+        total += count;
+        if (key == EMPTY_KEY) {
+            hasEmptyKey = true;
+            countOfEmptyKey += count;
+            return;
+        }
+        int mask = keys.length - 1;
+        int ind = OpenAddressing.hash(key) & mask;
+        while (true) {
+            long currKey = keys[ind];
+            if (currKey == key) {
+                counts[ind] += count;
+                return;
+            } else if (currKey == EMPTY_KEY) {
+                keys[ind] = key;
+                counts[ind] = count;
+                if (++sizeOfTable > maxSizeOfTable) {
+                    rehash(keys.length * 2);
+                }
+                return;
+            }
+            ind = (ind + 1) & mask;
+        }
+    }
+
+    public long get(long key) {
+        if (key == EMPTY_KEY) {
+            return countOfEmptyKey;
+        }
+        int ind = findInd(key);
+        return ind == -1 ? 0 : counts[ind];
+    }
+
+    public boolean contains(long key) {
+        if (key == EMPTY_KEY) {
+            return hasEmptyKey;
+        }
+        return findInd(key) != -1;
+    }
+
+    public void set(long key, long value) {
+        long currValue = get(key);
+        inc(key, value - currValue);
+    }
+
+    @JsonIgnore
+    public long getTotal() {
+        return total;
+    }
+
+    public int size() {
+        return sizeOfTable + (hasEmptyKey ? 1 : 0);
+    }
+
+    public void addAll(LongCounter other) {
+        if (other.hasEmptyKey) {
+            inc(EMPTY_KEY, other.countOfEmptyKey);
+        }
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != EMPTY_KEY) {
+                inc(other.keys[i], other.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * @return all keys, in no particular order
+     */
+
+    public long[] keys() {
+        long[] result = new long[size()];
+        int resultInd = 0;
+        if (hasEmptyKey) {
+            result[resultInd++] = EMPTY_KEY;
+        }
+        for (long key : keys) {
+            if (key != EMPTY_KEY) {
+                result[resultInd++] = key;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return all keys, sorted from highest to lowest count
+     */
+
+    public long[] sortedKeys() {
+        long[] resultKeys = keys();
+        long[] resultCounts = new long[resultKeys.length];
+        for (int i = 0; i < resultKeys.length; i++) {
+            resultCounts[i] = get(resultKeys[i]);
+        }
+        sortByCountDescending(resultKeys, resultCounts, 0, resultKeys.length - 1);
+        return resultKeys;
+    }
+
+    /**
+     * Only keep the maxSize keys with the highest counts
+     */
+
+    public void trim(int maxSize) {
+        if (maxSize <= 0) {
+            throw new RuntimeException("Incorrect max size:" + maxSize);
+        }
+        if (size() <= maxSize) {
+            return;
+        }
+        long[] sortedCounts = new long[size()];
+        int ind = 0;
+        if (hasEmptyKey) {
+            sortedCounts[ind++] = countOfEmptyKey;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY_KEY) {
+                sortedCounts[ind++] = counts[i];
+            }
+        }
+        Arrays.sort(sortedCounts);
+        long threshold = sortedCounts[sortedCounts.length - maxSize];
+        //number of keys with count equal to the threshold that we can still keep
+        int numOfTiesToKeep = maxSize;
+        for (int i = sortedCounts.length - 1; i >= 0 && sortedCounts[i] > threshold; i--) {
+            numOfTiesToKeep--;
+        }
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        boolean keepEmptyKey = false;
+        if (hasEmptyKey) {
+            if (countOfEmptyKey > threshold) {
+                keepEmptyKey = true;
+            } else if (countOfEmptyKey == threshold && numOfTiesToKeep > 0) {
+                keepEmptyKey = true;
+                numOfTiesToKeep--;
+            }
+        }
+        long emptyKeyCount = countOfEmptyKey;
+        allocate(OpenAddressing.capacityFor(maxSize));
+        if (keepEmptyKey) {
+            hasEmptyKey = true;
+            countOfEmptyKey = emptyKeyCount;
+            total += emptyKeyCount;
+        }
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY) {
+                long count = oldCounts[i];
+                if (count > threshold) {
+                    insertNewKey(oldKeys[i], count);
+                    total += count;
+                } else if (count == threshold && numOfTiesToKeep > 0) {
+                    insertNewKey(oldKeys[i], count);
+                    total += count;
+                    numOfTiesToKeep--;
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        allocate(OpenAddressing.MIN_CAPACITY);
+    }
+
+    public LongCounter clone() {
+        LongCounter clone = new LongCounter(size());
+        clone.addAll(this);
+        return clone;
+    }
+
+    //Serialization
+
+    /**
+     * @return keys and counts, interleaved
+     */
+
+    public long[] getValuesAsArray() {
+        long[] result = new long[size() * 2];
+        int ind = 0;
+        if (hasEmptyKey) {
+            result[ind++] = EMPTY_KEY;
+            result[ind++] = countOfEmptyKey;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY_KEY) {
+                result[ind++] = keys[i];
+                result[ind++] = counts[i];
+            }
+        }
+        return result;
+    }
+
+    public void setValuesAsArray(long[] values) {
+        if (values.length % 2 != 0) {
+            throw new RuntimeException("Expected an even number of values, received " + values.length);
+        }
+        allocate(OpenAddressing.capacityFor(values.length / 2));
+        for (int i = 0; i < values.length; i += 2) {
+            inc(values[i], values[i + 1]);
+        }
+    }
+
+    private void insertNewKey(long key, long count) {
+        int mask = keys.length - 1;
+        int ind = OpenAddressing.hash(key) & mask;
+        while (keys[ind] != EMPTY_KEY) {
+            ind = (ind + 1) & mask;
+        }
+        keys[ind] = key;
+        counts[ind] = count;
+        sizeOfTable++;
+    }
+
+    private int findInd(long key) {
+        int mask = keys.length - 1;
+        int ind = OpenAddressing.hash(key) & mask;
+        while (true) {
+            long currKey = keys[ind];
+            if (currKey == key) {
+                return ind;
+            } else if (currKey == EMPTY_KEY) {
+                return -1;
+            }
+            ind = (ind + 1) & mask;
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        keys = new long[newCapacity];
+        counts = new long[newCapacity];
+        sizeOfTable = 0;
+        maxSizeOfTable = OpenAddressing.maxSizeFor(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY) {
+                insertNewKey(oldKeys[i], oldCounts[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        counts = new long[capacity];
+        sizeOfTable = 0;
+        maxSizeOfTable = OpenAddressing.maxSizeFor(capacity);
+        hasEmptyKey = false;
+        countOfEmptyKey = 0;
+        total = 0;
+    }
+
+    private static void sortByCountDescending(long[] keys, long[] counts, int left, int right) {
+        while (left < right) {
+            if (right - left < 16) {
+                for (int i = left + 1; i <= right; i++) {
+                    for (int j = i; j > left && counts[j - 1] < counts[j]; j--) {
+                        swap(keys, counts, j - 1, j);
+                    }
+                }
+                return;
+            }
+            long pivot = counts[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (counts[i] > pivot) {
+                    i++;
+                }
+                while (counts[j] < pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, counts, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            //recurse into the smaller part, loop over the larger part
+            if (j - left < right - i) {
+                sortByCountDescending(keys, counts, left, j);
+                left = i;
+            } else {
+                sortByCountDescending(keys, counts, i, right);
+                right = j;
+            }
+        }
+    }
+
+    private static void swap(long[] keys, long[] counts, int i, int j) {
+        long tmpKey = keys[i];
+        keys[i] = keys[j];
+        keys[j] = tmpKey;
+        long tmpCount = counts[i];
+        counts[i] = counts[j];
+        counts[j] = tmpCount;
+    }
+
+    @Override
+    public String toString() {
+        long[] sortedKeys = sortedKeys();
+        StringBuilder result = new StringBuilder("Counts=(");
+        for (int i = 0; i < sortedKeys.length; i++) {
+            result.append(sortedKeys[i]).append("=").append(get(sortedKeys[i]));
+            if (i < sortedKeys.length - 1) {
+                if (result.length() < 1000) {
+                    result.append(",");
+                } else {
+                    result.append("...");
+                    break;
+                }
+            }
+        }
+        result.append(")");
+        return result.toString();
+    }
+}
@@ -0,0 +1,254 @@
+package be.bagofwords.counts;
+
+import java.util.Arrays;
+
+/**
+ * Counterpart of {@link LongCounter} with double values, e.g. to accumulate weights per (hashed) feature. Keys and
+ * values are stored in parallel arrays with open addressing, so incrementing a value never allocates objects. The total
+ * is updated with every increment, using compensated summation to avoid accumulating rounding errors. Not thread-safe.
+ */
+
+public class LongDoubleCounter {
+
+    private static final long EMPTY_KEY = 0;
+
+    private long[] keys;
+    private double[] values;
+    private int sizeOfTable;
+    private int maxSizeOfTable;
+    //The empty key can not be stored in the table, we keep its value separately
+    private boolean hasEmptyKey;
+    private double valueOfEmptyKey;
+    private final CompensatedSum total;
+
+    public LongDoubleCounter() {
+        this(OpenAddressing.MIN_CAPACITY);
+    }
+
+    public LongDoubleCounter(int expectedSize) {
+        total = new CompensatedSum();
+        allocate(OpenAddressing.capacityFor(expectedSize));
+    }
+
+    public void inc(long key) {
+        inc(key, 1.0);
+    }
+
+    public void inc(long key, double value) {
+        total.add(value);
+        if (key == EMPTY_KEY) {
+            hasEmptyKey = true;
+            valueOfEmptyKey += value;
+            return;
+        }
+        int mask = keys.length - 1;
+        int ind = OpenAddressing.hash(key) & mask;
+        while (true) {
+            long currKey = keys[ind];
+            if (currKey == key) {
+                values[ind] += value;
+                return;
+            } else if (currKey == EMPTY_KEY) {
+                keys[ind] = key;
+                values[ind] = value;
+                if (++sizeOfTable > maxSizeOfTable) {
+                    rehash(keys.length * 2);
+                }
+                return;
+            }
+            ind = (ind + 1) & mask;
+        }
+    }
+
+    public double get(long key) {
+        if (key == EMPTY_KEY) {
+            return valueOfEmptyKey;
+        }
+        int ind = findInd(key);
+        return ind == -1 ? 0 : values[ind];
+    }
+
+    public boolean contains(long key) {
+        if (key == EMPTY_KEY) {
+            return hasEmptyKey;
+        }
+        return findInd(key) != -1;
+    }
+
+    public void set(long key, double value) {
+        //assign the value directly, old + (value - old) is not always equal to value with doubles
+        if (key == EMPTY_KEY) {
+            total.add(-valueOfEmptyKey);
+            total.add(value);
+            hasEmptyKey = true;
+            valueOfEmptyKey = value;
+            return;
+        }
+        int ind = findInd(key);
+        if (ind == -1) {
+            inc(key, value);
+        } else {
+            total.add(-values[ind]);
+            total.add(value);
+            values[ind] = value;
+        }
+    }
+
+    public double getTotal() {
+        return total.get();
+    }
+
+    public int size() {
+        return sizeOfTable + (hasEmptyKey ? 1 : 0);
+    }
+
+    public void addAll(LongDoubleCounter other) {
+        if (other.hasEmptyKey) {
+            inc(EMPTY_KEY, other.valueOfEmptyKey);
+        }
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != EMPTY_KEY) {
+                inc(other.keys[i], other.values[i]);
+            }
+        }
+    }
+
+    /**
+     * @return all keys, in no particular order
+     */
+
+    public long[] keys() {
+        long[] result = new long[size()];
+        int resultInd = 0;
+        if (hasEmptyKey) {
+            result[resultInd++] = EMPTY_KEY;
+        }
+        for (long key : keys) {
+            if (key != EMPTY_KEY) {
+                result[resultInd++] = key;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return all keys, sorted from highest to lowest value
+     */
+
+    public long[] sortedKeys() {
+        long[] unsortedKeys = keys();
+        double[] unsortedValues = new double[unsortedKeys.length];
+        int[] inds = new int[unsortedKeys.length];
+        for (int i = 0; i < unsortedKeys.length; i++) {
+            unsortedValues[i] = get(unsortedKeys[i]);
+            inds[i] = i;
+        }
+        OpenAddressing.sortIndicesByValueDescending(inds, unsortedValues, 0, inds.length - 1);
+        long[] result = new long[inds.length];
+        for (int i = 0; i < inds.length; i++) {
+            result[i] = unsortedKeys[inds[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Only keep the maxSize keys with the highest values
+     */
+
+    public void trim(int maxSize) {
+        if (maxSize <= 0) {
+            throw new RuntimeException("Incorrect max size:" + maxSize);
+        }
+        if (size() <= maxSize) {
+            return;
+        }
+        double[] sortedValues = new double[size()];
+        int ind = 0;
+        if (hasEmptyKey) {
+            sortedValues[ind++] = valueOfEmptyKey;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY_KEY) {
+                sortedValues[ind++] = values[i];
+            }
+        }
+        Arrays.sort(sortedValues);
+        double threshold = sortedValues[sortedValues.length - maxSize];
+        //number of keys with value equal to the threshold that we can still keep
+        int numOfTiesToKeep = maxSize;
+        for (int i = sortedValues.length - 1; i >= 0 && sortedValues[i] > threshold; i--) {
+            numOfTiesToKeep--;
+        }
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+        boolean oldHasEmptyKey = hasEmptyKey;
+        double oldValueOfEmptyKey = valueOfEmptyKey;
+        allocate(OpenAddressing.capacityFor(maxSize));
+        if (oldHasEmptyKey && (oldValueOfEmptyKey > threshold || (oldValueOfEmptyKey == threshold && numOfTiesToKeep-- > 0))) {
+            inc(EMPTY_KEY, oldValueOfEmptyKey);
+        }
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY) {
+                double value = oldValues[i];
+                if (value > threshold || (value == threshold && numOfTiesToKeep-- > 0)) {
+                    inc(oldKeys[i], value);
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        allocate(OpenAddressing.MIN_CAPACITY);
+    }
+
+    public LongDoubleCounter clone() {
+        LongDoubleCounter clone = new LongDoubleCounter(size());
+        clone.addAll(this);
+        return clone;
+    }
+
+    private int findInd(long key) {
+        int mask = keys.length - 1;
+        int ind = OpenAddressing.hash(key) & mask;
+        while (true) {
+            long currKey = keys[ind];
+            if (currKey == key) {
+                return ind;
+            } else if (currKey == EMPTY_KEY) {
+                return -1;
+            }
+            ind = (ind + 1) & mask;
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+        keys = new long[newCapacity];
+        values = new double[newCapacity];
+        maxSizeOfTable = OpenAddressing.maxSizeFor(newCapacity);
+        int mask = newCapacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != EMPTY_KEY) {
+                int ind = OpenAddressing.hash(key) & mask;
+                while (keys[ind] != EMPTY_KEY) {
+                    ind = (ind + 1) & mask;
+                }
+                keys[ind] = key;
+                values[ind] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new double[capacity];
+        sizeOfTable = 0;
+        maxSizeOfTable = OpenAddressing.maxSizeFor(capacity);
+        hasEmptyKey = false;
+        valueOfEmptyKey = 0;
+        total.reset();
+    }
+
+}
@@ -0,0 +1,233 @@
+package be.bagofwords.counts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Alternative for {@link DoubleCounter} that does not box its values. Keys and values are stored in parallel arrays
+ * with open addressing, and the total is updated with every increment, using compensated summation to avoid
+ * accumulating rounding errors. Null keys are not supported. Not thread-safe.
+ */
+
+public class ObjectDoubleCounter<T extends Object> {
+
+    private Object[] keys;
+    private double[] values;
+    private int size;
+    private int maxSize;
+    private final CompensatedSum total;
+
+    public ObjectDoubleCounter() {
+        this(OpenAddressing.MIN_CAPACITY);
+    }
+
+    public ObjectDoubleCounter(int expectedSize) {
+        total = new CompensatedSum();
+        allocate(OpenAddressing.capacityFor(expectedSize));
+    }
+
+    public void inc(T key) {
+        inc(key, 1.0);
+    }
+
+    public void inc(T key, double value) {
+        if (key == null) {
+            throw new RuntimeException("Null keys are not supported");
+        }
+        total.add(value);
+        int mask = keys.length - 1;
+        int ind = hash(key) & mask;
+        while (true) {
+            Object currKey = keys[ind];
+            if (currKey == null) {
+                keys[ind] = key;
+                values[ind] = value;
+                if (++size > maxSize) {
+                    rehash(keys.length * 2);
+                }
+                return;
+            } else if (currKey.equals(key)) {
+                values[ind] += value;
+                return;
+            }
+            ind = (ind + 1) & mask;
+        }
+    }
+
+    public double get(T key) {
+        int ind = findInd(key);
+        return ind == -1 ? 0 : values[ind];
+    }
+
+    public boolean contains(T key) {
+        return findInd(key) != -1;
+    }
+
+    public void set(T key, double value) {
+        //assign the value directly, old + (value - old) is not always equal to value with doubles
+        int ind = findInd(key);
+        if (ind == -1) {
+            inc(key, value);
+        } else {
+            total.add(-values[ind]);
+            total.add(value);
+            values[ind] = value;
+        }
+    }
+
+    public double getTotal() {
+        return total.get();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void addAll(ObjectDoubleCounter<T> other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != null) {
+                inc((T) other.keys[i], other.values[i]);
+            }
+        }
+    }
+
+    public void addAll(DoubleCounter<T> other) {
+        for (Map.Entry<T, Double> entry : other.entrySet()) {
+            inc(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return all keys, in no particular order
+     */
+
+    public List<T> keys() {
+        List<T> result = new ArrayList<>(size);
+        for (Object key : keys) {
+            if (key != null) {
+                result.add((T) key);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return all keys, sorted from highest to lowest value
+     */
+
+    public List<T> sortedKeys() {
+        int[] inds = new int[size];
+        int numOfInds = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                inds[numOfInds++] = i;
+            }
+        }
+        OpenAddressing.sortIndicesByValueDescending(inds, values, 0, inds.length - 1);
+        List<T> result = new ArrayList<>(size);
+        for (int ind : inds) {
+            result.add((T) keys[ind]);
+        }
+        return result;
+    }
+
+    /**
+     * Only keep the maxSize keys with the highest values
+     */
+
+    public void trim(int maxSize) {
+        if (maxSize <= 0) {
+            throw new RuntimeException("Incorrect max size:" + maxSize);
+        }
+        if (size <= maxSize) {
+            return;
+        }
+        double[] sortedValues = new double[size];
+        int ind = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                sortedValues[ind++] = values[i];
+            }
+        }
+        Arrays.sort(sortedValues);
+        double threshold = sortedValues[sortedValues.length - maxSize];
+        //number of keys with value equal to the threshold that we can still keep
+        int numOfTiesToKeep = maxSize;
+        for (int i = sortedValues.length - 1; i >= 0 && sortedValues[i] > threshold; i--) {
+            numOfTiesToKeep--;
+        }
+        Object[] oldKeys = keys;
+        double[] oldValues = values;
+        allocate(OpenAddressing.capacityFor(maxSize));
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                double value = oldValues[i];
+                if (value > threshold || (value == threshold && numOfTiesToKeep-- > 0)) {
+                    inc((T) oldKeys[i], value);
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        allocate(OpenAddressing.MIN_CAPACITY);
+    }
+
+    public ObjectDoubleCounter<T> clone() {
+        ObjectDoubleCounter<T> clone = new ObjectDoubleCounter<>(size);
+        clone.addAll(this);
+        return clone;
+    }
+
+    private int findInd(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        int mask = keys.length - 1;
+        int ind = hash(key) & mask;
+        while (true) {
+            Object currKey = keys[ind];
+            if (currKey == null) {
+                return -1;
+            } else if (currKey.equals(key)) {
+                return ind;
+            }
+            ind = (ind + 1) & mask;
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        Object[] oldKeys = keys;
+        double[] oldValues = values;
+        keys = new Object[newCapacity];
+        values = new double[newCapacity];
+        maxSize = OpenAddressing.maxSizeFor(newCapacity);
+        int mask = newCapacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            Object key = oldKeys[i];
+            if (key != null) {
+                int ind = hash(key) & mask;
+                while (keys[ind] != null) {
+                    ind = (ind + 1) & mask;
+                }
+                keys[ind] = key;
+                values[ind] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        values = new double[capacity];
+        size = 0;
+        maxSize = OpenAddressing.maxSizeFor(capacity);
+        total.reset();
+    }
+
+    private static int hash(Object key) {
+        return OpenAddressing.hash(key.hashCode());
+    }
+
+}
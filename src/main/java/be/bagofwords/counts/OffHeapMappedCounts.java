@@ -0,0 +1,407 @@
+package be.bagofwords.counts;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Two-level count table, keyed by (outer key, inner key), that stores its entries outside of the java heap, as an
+ * alternative for {@link be.bagofwords.util.MappedCounts} with hundreds of millions of counts. Every entry takes 32
+ * bytes in an open-addressing table (linear probing), spread over segments of at most 1 GB.
+ * <p>
+ * The entries of an outer key are linked in a chain, and a second open-addressing table (16 bytes per outer key) maps
+ * every outer key to the start of its chain, so the entries of one outer key can be visited without scanning the
+ * complete table.
+ * <p>
+ * The tables are either backed by direct byte buffers, in which case they grow when needed, or by a memory-mapped file
+ * with a fixed maximum number of entries. The file is used as scratch space: its previous contents are discarded and
+ * it can not be reopened.
+ * <p>
+ * Not thread-safe.
+ */
+
+public class OffHeapMappedCounts implements Closeable {
+
+    private static final long EMPTY_KEY = 0;
+    private static final int SLOTS_PER_SEGMENT_SHIFT = 25;
+    private static final long SLOTS_PER_SEGMENT = 1l << SLOTS_PER_SEGMENT_SHIFT;
+
+    //layout of an entry: outer key, inner key, count, slot of the next entry of the same outer key (+1, 0 ends the chain)
+    private static final int ENTRY_SIZE = 32;
+    private static final int INNER_KEY = 8;
+    private static final int COUNT = 16;
+    private static final int NEXT = 24;
+    //layout of an outer key: outer key, slot of the first entry (+1, 0 marks an empty slot)
+    private static final int OUTER_KEY_SIZE = 16;
+    private static final int FIRST = 8;
+
+    private final RandomAccessFile file;
+    private Table entries;
+    private long sizeOfTable;
+    private long maxSizeOfTable;
+    private Table outerKeys;
+    private long numOfOuterKeys;
+    private long maxNumOfOuterKeys;
+    //The key (EMPTY_KEY, EMPTY_KEY) marks empty slots, we keep its count separately
+    private boolean hasEmptyKey;
+    private long countOfEmptyKey;
+    private long total;
+
+    public OffHeapMappedCounts() {
+        this(1024);
+    }
+
+    public OffHeapMappedCounts(long expectedSize) {
+        this.file = null;
+        allocateEntries(capacityFor(expectedSize));
+        allocateOuterKeys(OpenAddressing.MIN_CAPACITY);
+    }
+
+    public OffHeapMappedCounts(File file, long maxSize) throws IOException {
+        this.file = new RandomAccessFile(file, "rw");
+        //there are never more outer keys than entries, so both tables get the same capacity
+        long capacity = capacityFor(maxSize);
+        //discard any previous contents, the file is filled with zeros (i.e. empty slots)
+        this.file.setLength(0);
+        this.file.setLength(capacity * (ENTRY_SIZE + OUTER_KEY_SIZE));
+        FileChannel channel = this.file.getChannel();
+        this.entries = new Table(channel, 0, capacity, ENTRY_SIZE);
+        this.maxSizeOfTable = (long) (capacity * OpenAddressing.MAX_LOAD_FACTOR);
+        this.outerKeys = new Table(channel, capacity * ENTRY_SIZE, capacity, OUTER_KEY_SIZE);
+        //the entries table is full before the outer keys table is, so the outer keys table never needs to grow
+        this.maxNumOfOuterKeys = capacity - 1;
+    }
+
+    public void inc(long outerKey, long innerKey) {
+        inc(outerKey, innerKey, 1l);
+    }
+
+    public void inc(long outerKey, long innerKey, long count) {
+        if (outerKey == EMPTY_KEY && innerKey == EMPTY_KEY) {
+            total += count;
+            hasEmptyKey = true;
+            countOfEmptyKey += count;
+            return;
+        }
+        long mask = entries.capacity - 1;
+        long slot = hash(outerKey, innerKey) & mask;
+        while (true) {
+            long currOuterKey = entries.getLong(slot, 0);
+            long currInnerKey = entries.getLong(slot, INNER_KEY);
+            if (currOuterKey == outerKey && currInnerKey == innerKey) {
+                entries.putLong(slot, COUNT, entries.getLong(slot, COUNT) + count);
+                total += count;
+                return;
+            } else if (currOuterKey == EMPTY_KEY && currInnerKey == EMPTY_KEY) {
+                if (file != null && sizeOfTable >= maxSizeOfTable) {
+                    //check before writing the entry, a file-backed table can not grow and should keep its empty slots
+                    throw new RuntimeException("This table is backed by a file with room for at most " + maxSizeOfTable + " entries");
+                }
+                total += count;
+                entries.putLong(slot, 0, outerKey);
+                entries.putLong(slot, INNER_KEY, innerKey);
+                entries.putLong(slot, COUNT, count);
+                link(outerKey, slot);
+                if (++sizeOfTable > maxSizeOfTable) {
+                    grow();
+                }
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public long get(long outerKey, long innerKey) {
+        if (outerKey == EMPTY_KEY && innerKey == EMPTY_KEY) {
+            return countOfEmptyKey;
+        }
+        long mask = entries.capacity - 1;
+        long slot = hash(outerKey, innerKey) & mask;
+        while (true) {
+            long currOuterKey = entries.getLong(slot, 0);
+            long currInnerKey = entries.getLong(slot, INNER_KEY);
+            if (currOuterKey == outerKey && currInnerKey == innerKey) {
+                return entries.getLong(slot, COUNT);
+            } else if (currOuterKey == EMPTY_KEY && currInnerKey == EMPTY_KEY) {
+                return 0;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public long size() {
+        return sizeOfTable + (hasEmptyKey ? 1 : 0);
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Visit all entries, in no particular order
+     */
+
+    public void forEach(CountVisitor visitor) {
+        if (hasEmptyKey) {
+            visitor.visit(EMPTY_KEY, EMPTY_KEY, countOfEmptyKey);
+        }
+        for (long slot = 0; slot < entries.capacity; slot++) {
+            long outerKey = entries.getLong(slot, 0);
+            long innerKey = entries.getLong(slot, INNER_KEY);
+            if (outerKey != EMPTY_KEY || innerKey != EMPTY_KEY) {
+                visitor.visit(outerKey, innerKey, entries.getLong(slot, COUNT));
+            }
+        }
+    }
+
+    /**
+     * Visit all entries of one outer key, in no particular order. Only the entries of this outer key are read.
+     */
+
+    public void forEach(long outerKey, CountVisitor visitor) {
+        if (outerKey == EMPTY_KEY && hasEmptyKey) {
+            visitor.visit(EMPTY_KEY, EMPTY_KEY, countOfEmptyKey);
+        }
+        long outerKeySlot = findOuterKey(outerKey);
+        if (outerKeySlot == -1) {
+            return;
+        }
+        long next = outerKeys.getLong(outerKeySlot, FIRST);
+        while (next != 0) {
+            long slot = next - 1;
+            visitor.visit(outerKey, entries.getLong(slot, INNER_KEY), entries.getLong(slot, COUNT));
+            next = entries.getLong(slot, NEXT);
+        }
+    }
+
+    public Counter<Long> get(long outerKey) {
+        final Counter<Long> result = new Counter<>();
+        forEach(outerKey, new CountVisitor() {
+            @Override
+            public void visit(long outerKey, long innerKey, long count) {
+                result.set(innerKey, count);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return all counts on the heap, in the same format as {@link be.bagofwords.util.MappedCounts#toMaps()}
+     */
+
+    public Map<Long, Map<Long, Long>> toMaps() {
+        final Map<Long, Map<Long, Long>> result = new HashMap<>();
+        forEach(new CountVisitor() {
+            @Override
+            public void visit(long outerKey, long innerKey, long count) {
+                Map<Long, Long> innerCounts = result.get(outerKey);
+                if (innerCounts == null) {
+                    innerCounts = new HashMap<>();
+                    result.put(outerKey, innerCounts);
+                }
+                innerCounts.put(innerKey, count);
+            }
+        });
+        return result;
+    }
+
+    public void clear() {
+        entries.clear();
+        outerKeys.clear();
+        sizeOfTable = 0;
+        numOfOuterKeys = 0;
+        hasEmptyKey = false;
+        countOfEmptyKey = 0;
+        total = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        entries = new Table(0, ENTRY_SIZE);
+        outerKeys = new Table(0, OUTER_KEY_SIZE);
+        if (file != null) {
+            file.close();
+        }
+    }
+
+    /**
+     * Add the entry in the given slot at the start of the chain of its outer key
+     */
+
+    private void link(long outerKey, long entrySlot) {
+        long mask = outerKeys.capacity - 1;
+        long slot = OpenAddressing.mix(outerKey) & mask;
+        while (true) {
+            long first = outerKeys.getLong(slot, FIRST);
+            if (first == 0) {
+                outerKeys.putLong(slot, 0, outerKey);
+                outerKeys.putLong(slot, FIRST, entrySlot + 1);
+                entries.putLong(entrySlot, NEXT, 0);
+                if (++numOfOuterKeys > maxNumOfOuterKeys) {
+                    growOuterKeys();
+                }
+                return;
+            } else if (outerKeys.getLong(slot, 0) == outerKey) {
+                outerKeys.putLong(slot, FIRST, entrySlot + 1);
+                entries.putLong(entrySlot, NEXT, first);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private long findOuterKey(long outerKey) {
+        long mask = outerKeys.capacity - 1;
+        long slot = OpenAddressing.mix(outerKey) & mask;
+        while (true) {
+            if (outerKeys.getLong(slot, FIRST) == 0) {
+                return -1;
+            } else if (outerKeys.getLong(slot, 0) == outerKey) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void grow() {
+        Table oldEntries = entries;
+        allocateEntries(entries.capacity * 2);
+        //the chains refer to slots of the old table, so we rebuild them
+        outerKeys.clear();
+        numOfOuterKeys = 0;
+        for (long slot = 0; slot < oldEntries.capacity; slot++) {
+            long outerKey = oldEntries.getLong(slot, 0);
+            long innerKey = oldEntries.getLong(slot, INNER_KEY);
+            if (outerKey != EMPTY_KEY || innerKey != EMPTY_KEY) {
+                insertNewKey(outerKey, innerKey, oldEntries.getLong(slot, COUNT));
+            }
+        }
+    }
+
+    private void growOuterKeys() {
+        Table oldOuterKeys = outerKeys;
+        allocateOuterKeys(outerKeys.capacity * 2);
+        long mask = outerKeys.capacity - 1;
+        for (long oldSlot = 0; oldSlot < oldOuterKeys.capacity; oldSlot++) {
+            long first = oldOuterKeys.getLong(oldSlot, FIRST);
+            if (first != 0) {
+                long outerKey = oldOuterKeys.getLong(oldSlot, 0);
+                long slot = OpenAddressing.mix(outerKey) & mask;
+                while (outerKeys.getLong(slot, FIRST) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                outerKeys.putLong(slot, 0, outerKey);
+                outerKeys.putLong(slot, FIRST, first);
+                numOfOuterKeys++;
+            }
+        }
+    }
+
+    private void insertNewKey(long outerKey, long innerKey, long count) {
+        long mask = entries.capacity - 1;
+        long slot = hash(outerKey, innerKey) & mask;
+        while (true) {
+            if (entries.getLong(slot, 0) == EMPTY_KEY && entries.getLong(slot, INNER_KEY) == EMPTY_KEY) {
+                entries.putLong(slot, 0, outerKey);
+                entries.putLong(slot, INNER_KEY, innerKey);
+                entries.putLong(slot, COUNT, count);
+                link(outerKey, slot);
+                sizeOfTable++;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void allocateEntries(long capacity) {
+        this.entries = new Table(capacity, ENTRY_SIZE);
+        this.sizeOfTable = 0;
+        this.maxSizeOfTable = (long) (capacity * OpenAddressing.MAX_LOAD_FACTOR);
+    }
+
+    private void allocateOuterKeys(long capacity) {
+        this.outerKeys = new Table(capacity, OUTER_KEY_SIZE);
+        this.numOfOuterKeys = 0;
+        this.maxNumOfOuterKeys = (long) (capacity * OpenAddressing.MAX_LOAD_FACTOR);
+    }
+
+    private static long capacityFor(long expectedSize) {
+        long capacity = OpenAddressing.MIN_CAPACITY;
+        while (capacity * OpenAddressing.MAX_LOAD_FACTOR < expectedSize) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    private static long hash(long outerKey, long innerKey) {
+        return OpenAddressing.mix(OpenAddressing.mix(outerKey) + innerKey);
+    }
+
+    public interface CountVisitor {
+        void visit(long outerKey, long innerKey, long count);
+    }
+
+    /**
+     * Fixed size array of entries, split over byte buffers of at most SLOTS_PER_SEGMENT entries
+     */
+
+    private static class Table {
+
+        private final ByteBuffer[] segments;
+        private final long capacity;
+        private final int entrySize;
+
+        private Table(long capacity, int entrySize) {
+            this.capacity = capacity;
+            this.entrySize = entrySize;
+            this.segments = new ByteBuffer[getNumOfSegments(capacity)];
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = ByteBuffer.allocateDirect(getSegmentSize(capacity)).order(ByteOrder.nativeOrder());
+            }
+        }
+
+        private Table(FileChannel channel, long start, long capacity, int entrySize) throws IOException {
+            this.capacity = capacity;
+            this.entrySize = entrySize;
+            this.segments = new ByteBuffer[getNumOfSegments(capacity)];
+            for (int i = 0; i < segments.length; i++) {
+                long segmentStart = start + i * SLOTS_PER_SEGMENT * entrySize;
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, segmentStart, getSegmentSize(capacity));
+                segment.order(ByteOrder.nativeOrder());
+                segments[i] = segment;
+            }
+        }
+
+        private long getLong(long slot, int offset) {
+            return segments[(int) (slot >>> SLOTS_PER_SEGMENT_SHIFT)].getLong((int) (slot & (SLOTS_PER_SEGMENT - 1)) * entrySize + offset);
+        }
+
+        private void putLong(long slot, int offset, long value) {
+            segments[(int) (slot >>> SLOTS_PER_SEGMENT_SHIFT)].putLong((int) (slot & (SLOTS_PER_SEGMENT - 1)) * entrySize + offset, value);
+        }
+
+        private void clear() {
+            for (ByteBuffer segment : segments) {
+                int end = segment.capacity();
+                for (int position = 0; position < end; position += 8) {
+                    segment.putLong(position, 0);
+                }
+            }
+        }
+
+        private int getNumOfSegments(long capacity) {
+            return (int) ((capacity + SLOTS_PER_SEGMENT - 1) / SLOTS_PER_SEGMENT);
+        }
+
+        private int getSegmentSize(long capacity) {
+            return (int) (Math.min(capacity, SLOTS_PER_SEGMENT) * entrySize);
+        }
+    }
+}
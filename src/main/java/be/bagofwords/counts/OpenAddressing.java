@@ -0,0 +1,90 @@
+package be.bagofwords.counts;
+
+/**
+ * Helper methods shared by the counters that store their keys in open-addressing tables with linear probing
+ */
+
+class OpenAddressing {
+
+    static final double MAX_LOAD_FACTOR = 0.75;
+    static final int MIN_CAPACITY = 16;
+
+    /**
+     * @return a power of two that can hold expectedSize keys without exceeding the maximum load factor
+     */
+
+    static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * MAX_LOAD_FACTOR < expectedSize) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    static int maxSizeFor(int capacity) {
+        return (int) (capacity * MAX_LOAD_FACTOR);
+    }
+
+    /**
+     * Keys are often hashes with poorly distributed lower bits, so we mix all bits (finalizer of murmur3)
+     */
+
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    static int hash(long key) {
+        return (int) mix(key);
+    }
+
+    /**
+     * Sort the indices (from left to right, inclusive) from highest to lowest value
+     */
+
+    static void sortIndicesByValueDescending(int[] inds, double[] values, int left, int right) {
+        while (left < right) {
+            if (right - left < 16) {
+                for (int i = left + 1; i <= right; i++) {
+                    for (int j = i; j > left && values[inds[j - 1]] < values[inds[j]]; j--) {
+                        int tmp = inds[j - 1];
+                        inds[j - 1] = inds[j];
+                        inds[j] = tmp;
+                    }
+                }
+                return;
+            }
+            double pivot = values[inds[(left + right) >>> 1]];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[inds[i]] > pivot) {
+                    i++;
+                }
+                while (values[inds[j]] < pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = inds[i];
+                    inds[i] = inds[j];
+                    inds[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            //recurse into the smaller part, loop over the larger part
+            if (j - left < right - i) {
+                sortIndicesByValueDescending(inds, values, left, j);
+                left = i;
+            } else {
+                sortIndicesByValueDescending(inds, values, i, right);
+                right = j;
+            }
+        }
+    }
+
+}
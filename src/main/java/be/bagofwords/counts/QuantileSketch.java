@@ -0,0 +1,262 @@
+package be.bagofwords.counts;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Streaming quantile sketch (KLL, Karnin, Lang and Liberty, 2016). Values are kept in a hierarchy of compactors:
+ * every value at level h represents 2^h values of the stream. When a level becomes full, it is sorted and every other
+ * value is promoted to the next level. Memory is O(k), and ranks are approximated with an error of about 1.7/k of the
+ * number of values (for the default k=200 about 1%).
+ * <p>
+ * All methods are synchronized, so values can be added from multiple threads. Sketches filled by different workers
+ * can be merged with {@link #addAll(QuantileSketch)}.
+ */
+
+public class QuantileSketch {
+
+    public static final int DEFAULT_K = 200;
+    private static final int MIN_LEVEL_CAPACITY = 8;
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+
+    private final int k;
+    private final Random random;
+    private double[][] levels;
+    private int[] levelSizes;
+    private int numOfLevels;
+    private long count;
+    private double min;
+    private double max;
+
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    public QuantileSketch(int k) {
+        if (k < MIN_LEVEL_CAPACITY) {
+            throw new RuntimeException("Incorrect k:" + k + ", should be at least " + MIN_LEVEL_CAPACITY);
+        }
+        this.k = k;
+        this.random = new Random();
+        this.levels = new double[1][k];
+        this.levelSizes = new int[1];
+        this.numOfLevels = 1;
+        this.min = Double.NaN;
+        this.max = Double.NaN;
+    }
+
+    public synchronized void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (count == 0) {
+            min = value;
+            max = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        count++;
+        appendToLevel(0, value);
+        compress();
+    }
+
+    public void addAll(QuantileSketch other) {
+        if (other == this) {
+            throw new RuntimeException("Can not merge a sketch with itself");
+        }
+        double[][] otherLevels;
+        long otherCount;
+        double otherMin;
+        double otherMax;
+        synchronized (other) {
+            otherLevels = new double[other.numOfLevels][];
+            for (int level = 0; level < other.numOfLevels; level++) {
+                otherLevels[level] = Arrays.copyOf(other.levels[level], other.levelSizes[level]);
+            }
+            otherCount = other.count;
+            otherMin = other.min;
+            otherMax = other.max;
+        }
+        synchronized (this) {
+            if (otherCount == 0) {
+                return;
+            }
+            if (count == 0) {
+                min = otherMin;
+                max = otherMax;
+            } else {
+                min = Math.min(min, otherMin);
+                max = Math.max(max, otherMax);
+            }
+            count += otherCount;
+            for (int level = 0; level < otherLevels.length; level++) {
+                for (double value : otherLevels[level]) {
+                    appendToLevel(level, value);
+                }
+            }
+            compress();
+        }
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized double getMin() {
+        return min;
+    }
+
+    public synchronized double getMax() {
+        return max;
+    }
+
+    /**
+     * @return approximate number of values strictly smaller than the given value
+     */
+
+    public synchronized long getRank(double value) {
+        long result = 0;
+        for (int level = 0; level < numOfLevels; level++) {
+            long weight = 1l << level;
+            for (int i = 0; i < levelSizes[level]; i++) {
+                if (levels[level][i] < value) {
+                    result += weight;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param fraction a value between 0 and 1
+     * @return approximate value at the given fraction of all values, e.g. 0.5 for the median
+     */
+
+    public synchronized double getQuantile(double fraction) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        SortedView view = getSortedView();
+        return view.getValueAtRank(Math.round(fraction * (count - 1)));
+    }
+
+    /**
+     * @return borders that split all values in numberOfBins bins with (approximately) the same number of values. Only
+     * distinct borders are returned, so when many values are equal, fewer borders might be returned.
+     */
+
+    public synchronized double[] getEquiDenseBorders(int numberOfBins) {
+        if (count == 0) {
+            return new double[]{0.0};
+        }
+        SortedView view = getSortedView();
+        double[] result = new double[numberOfBins - 1];
+        int numOfBorders = 0;
+        for (int i = 0; i < numberOfBins - 1; i++) {
+            long rank = Math.round(((double) count) / numberOfBins * (i + 1));
+            double border = view.getValueAtRank(rank);
+            if (border > min && (numOfBorders == 0 || border > result[numOfBorders - 1])) {
+                result[numOfBorders++] = border;
+            }
+        }
+        return Arrays.copyOf(result, numOfBorders);
+    }
+
+    private SortedView getSortedView() {
+        double[] values = new double[0];
+        long[] weights = new long[0];
+        for (int level = 0; level < numOfLevels; level++) {
+            double[] levelValues = Arrays.copyOf(levels[level], levelSizes[level]);
+            Arrays.sort(levelValues);
+            //merge the sorted values of this level with the values of the previous levels
+            double[] newValues = new double[values.length + levelValues.length];
+            long[] newWeights = new long[newValues.length];
+            long weight = 1l << level;
+            int i = 0;
+            int j = 0;
+            for (int pos = 0; pos < newValues.length; pos++) {
+                if (j >= levelValues.length || (i < values.length && values[i] <= levelValues[j])) {
+                    newValues[pos] = values[i];
+                    newWeights[pos] = weights[i++];
+                } else {
+                    newValues[pos] = levelValues[j++];
+                    newWeights[pos] = weight;
+                }
+            }
+            values = newValues;
+            weights = newWeights;
+        }
+        return new SortedView(values, weights);
+    }
+
+    private void appendToLevel(int level, double value) {
+        while (level >= numOfLevels) {
+            addLevel();
+        }
+        if (levelSizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], levels[level].length * 2);
+        }
+        levels[level][levelSizes[level]++] = value;
+    }
+
+    private void addLevel() {
+        if (numOfLevels == levels.length) {
+            levels = Arrays.copyOf(levels, levels.length * 2);
+            levelSizes = Arrays.copyOf(levelSizes, levelSizes.length * 2);
+        }
+        levels[numOfLevels] = new double[MIN_LEVEL_CAPACITY];
+        numOfLevels++;
+    }
+
+    private int getCapacity(int level) {
+        int depth = numOfLevels - level - 1;
+        return Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+    }
+
+    private void compress() {
+        for (int level = 0; level < numOfLevels; level++) {
+            if (levelSizes[level] >= getCapacity(level)) {
+                compact(level);
+            }
+        }
+    }
+
+    /**
+     * Sort the values of this level and promote every other value (starting at a random offset) to the next level
+     */
+
+    private void compact(int level) {
+        double[] values = levels[level];
+        int size = levelSizes[level];
+        Arrays.sort(values, 0, size);
+        //with an odd number of values, the smallest value stays at this level
+        int start = size % 2;
+        int offset = random.nextBoolean() ? 1 : 0;
+        for (int i = start + offset; i < size; i += 2) {
+            appendToLevel(level + 1, values[i]);
+        }
+        levelSizes[level] = start;
+    }
+
+    private static class SortedView {
+        private final double[] values;
+        private final long[] weights;
+
+        private SortedView(double[] values, long[] weights) {
+            this.values = values;
+            this.weights = weights;
+        }
+
+        private double getValueAtRank(long rank) {
+            long cumulativeWeight = 0;
+            for (int i = 0; i < values.length; i++) {
+                cumulativeWeight += weights[i];
+                if (cumulativeWeight > rank) {
+                    return values[i];
+                }
+            }
+            return values[values.length - 1];
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package be.bagofwords.counts;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe alternative for {@link WindowOfCounts}. Counts are kept in a ring buffer of time buckets, each with its
+ * own {@link LongAdder}, so writers never block each other and no counts are lost. An expired bucket is replaced
+ * (not reset) by the first writer that needs it, which makes rotation lock-free as well.
+ * <p>
+ * The default configuration has buckets of 1 second and covers 5 minutes, enough to report rates over the last
+ * second, minute and 5 minutes.
+ */
+
+public class RateMeter {
+
+    public static final long ONE_SECOND = 1000;
+    public static final long ONE_MINUTE = 60 * ONE_SECOND;
+    public static final long FIVE_MINUTES = 5 * ONE_MINUTE;
+
+    private final long bucketSize;
+    private final int numOfBuckets;
+    private final AtomicReferenceArray<Bucket> buckets;
+    private final LongAdder totalCounts;
+    private volatile long startTime;
+
+    public RateMeter() {
+        this(ONE_SECOND, (int) (FIVE_MINUTES / ONE_SECOND));
+    }
+
+    public RateMeter(long bucketSize, int numOfBuckets) {
+        if (bucketSize <= 0 || numOfBuckets <= 0) {
+            throw new RuntimeException("Incorrect bucket size " + bucketSize + " or number of buckets " + numOfBuckets);
+        }
+        this.bucketSize = bucketSize;
+        this.numOfBuckets = numOfBuckets;
+        this.buckets = new AtomicReferenceArray<>(numOfBuckets);
+        this.totalCounts = new LongAdder();
+        this.startTime = System.currentTimeMillis();
+    }
+
+    public void addCount() {
+        addCount(1l);
+    }
+
+    public void addCount(long count) {
+        long bucketId = System.currentTimeMillis() / bucketSize;
+        getBucket(bucketId).counts.add(count);
+        totalCounts.add(count);
+    }
+
+    public long getTotalCounts() {
+        return totalCounts.sum();
+    }
+
+    /**
+     * @return the number of counts in the given window (rounded up to a whole number of buckets)
+     */
+
+    public long getCounts(long window) {
+        long currentBucketId = System.currentTimeMillis() / bucketSize;
+        long firstBucketId = currentBucketId - getNumOfBuckets(window) + 1;
+        long result = 0;
+        for (int i = 0; i < numOfBuckets; i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket != null && bucket.id >= firstBucketId && bucket.id <= currentBucketId) {
+                result += bucket.counts.sum();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the average number of counts per second in the given window
+     */
+
+    public double getRate(long window) {
+        long now = System.currentTimeMillis();
+        long firstBucketId = now / bucketSize - getNumOfBuckets(window) + 1;
+        long timeCovered = now - Math.max(startTime, firstBucketId * bucketSize);
+        if (timeCovered <= 0) {
+            return 0;
+        }
+        return getCounts(window) * 1000.0 / timeCovered;
+    }
+
+    /**
+     * @param percentile a value between 0 and 100
+     * @return the given percentile of the rates (counts per second) of all completed buckets in the given window
+     */
+
+    public double getRatePercentile(long window, double percentile) {
+        long now = System.currentTimeMillis();
+        long currentBucketId = now / bucketSize;
+        long firstBucketId = Math.max(currentBucketId - getNumOfBuckets(window), startTime / bucketSize);
+        int numOfCompletedBuckets = (int) (currentBucketId - firstBucketId);
+        if (numOfCompletedBuckets <= 0) {
+            return 0;
+        }
+        //buckets that are missing had no counts
+        double[] rates = new double[numOfCompletedBuckets];
+        for (int i = 0; i < numOfBuckets; i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket != null && bucket.id >= firstBucketId && bucket.id < currentBucketId) {
+                rates[(int) (bucket.id - firstBucketId)] = bucket.counts.sum() * 1000.0 / bucketSize;
+            }
+        }
+        Arrays.sort(rates);
+        int ind = (int) Math.ceil(percentile / 100.0 * rates.length) - 1;
+        return rates[Math.max(0, Math.min(rates.length - 1, ind))];
+    }
+
+    public double getMsPerCount() {
+        double rate = getRate(numOfBuckets * bucketSize);
+        if (rate == 0) {
+            return Double.MAX_VALUE;
+        }
+        return 1000.0 / rate;
+    }
+
+    /**
+     * @return estimated time (in ms) to process the given number of counts, based on the rate over all buckets
+     */
+
+    public long getNeededTime(long countsToDo) {
+        double msPerCount = getMsPerCount();
+        if (msPerCount == Double.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        } else {
+            return Math.round(countsToDo * msPerCount);
+        }
+    }
+
+    public void clearCounts() {
+        for (int i = 0; i < numOfBuckets; i++) {
+            buckets.set(i, null);
+        }
+        totalCounts.reset();
+        startTime = System.currentTimeMillis();
+    }
+
+    private int getNumOfBuckets(long window) {
+        return (int) Math.max(1, Math.min(numOfBuckets, (window + bucketSize - 1) / bucketSize));
+    }
+
+    private Bucket getBucket(long bucketId) {
+        int ind = (int) (bucketId % numOfBuckets);
+        while (true) {
+            Bucket bucket = buckets.get(ind);
+            if (bucket != null && bucket.id >= bucketId) {
+                //a bucket with a larger id can only occur when this thread was delayed for a full rotation
+                return bucket;
+            }
+            Bucket newBucket = new Bucket(bucketId);
+            if (buckets.compareAndSet(ind, bucket, newBucket)) {
+                return newBucket;
+            }
+        }
+    }
+
+    private static class Bucket {
+        private final long id;
+        private final LongAdder counts;
+
+        private Bucket(long id) {
+            this.id = id;
+            this.counts = new LongAdder();
+        }
+    }
+}
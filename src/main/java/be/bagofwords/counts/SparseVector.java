@@ -1,60 +1,120 @@
 package be.bagofwords.counts;
 
+import be.bagofwords.util.Compactable;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import java.util.Arrays;
 
-public class SparseVector {
+/**
+ * Sparse vector of float values. The first size entries of inds are kept sorted (without duplicates), so values are
+ * looked up with a binary search and operations on two vectors are merges.
+ * <p>
+ * To build a large vector, use {@link #append(int, float)}, which does not keep the indices sorted, and call
+ * {@link #compact()} when all values were appended. The read methods never modify the vector (so a vector can be read
+ * by several threads) and throw an exception if the vector was not sorted. Deserialized vectors are sorted when they
+ * are created.
+ */
+
+public class SparseVector implements Compactable {
 
     public int[] inds;
     public float[] vals;
     public int size;
+    private boolean sorted;
 
     public SparseVector() {
-        this.inds = new int[0];
-        this.vals = new float[0];
+        this(0);
+    }
+
+    public SparseVector(int expectedSize) {
+        this.inds = new int[expectedSize];
+        this.vals = new float[expectedSize];
         size = 0;
+        sorted = true;
+    }
+
+    /**
+     * Vectors that were serialized by older versions might not be sorted, so we sort them here
+     */
+
+    @JsonCreator
+    public SparseVector(@JsonProperty("inds") int[] inds, @JsonProperty("vals") float[] vals, @JsonProperty("size") int size) {
+        this.inds = inds == null ? new int[0] : inds;
+        this.vals = vals == null ? new float[0] : vals;
+        this.size = size;
+        sort();
     }
 
     public void addValue(int ind, float value) {
-        int currInd = -1;
-        for (int i = 0; i < inds.length; i++)
-            if (inds[i] == ind)
-                currInd = i;
-        if (currInd != -1)
-            vals[currInd] += value;
-        else {
-            if (size >= inds.length) {
-                inds = Arrays.copyOf(inds, inds.length * 2 + 1);
-                vals = Arrays.copyOf(vals, vals.length * 2 + 1);
-            }
-            inds[size] = ind;
-            vals[size] = value;
+        sort();
+        int pos = Arrays.binarySearch(inds, 0, size, ind);
+        if (pos >= 0) {
+            vals[pos] += value;
+        } else {
+            pos = -pos - 1;
+            ensureCapacity(size + 1);
+            System.arraycopy(inds, pos, inds, pos + 1, size - pos);
+            System.arraycopy(vals, pos, vals, pos + 1, size - pos);
+            inds[pos] = ind;
+            vals[pos] = value;
             size++;
         }
     }
 
+    /**
+     * Add a value without keeping the indices sorted. Values for the same index are summed when the vector is sorted.
+     */
+
+    public void append(int ind, float value) {
+        ensureCapacity(size + 1);
+        inds[size] = ind;
+        vals[size] = value;
+        size++;
+        sorted = false;
+    }
+
     public double get(int ind) {
-        for (int i = 0; i < inds.length; i++)
-            if (inds[i] == ind)
-                return vals[i];
-        return 0.0;
+        checkSorted();
+        int pos = Arrays.binarySearch(inds, 0, size, ind);
+        if (pos >= 0) {
+            return vals[pos];
+        } else {
+            return 0.0;
+        }
     }
 
+    /**
+     * Only keep the newSize entries with the highest values
+     */
+
     public void trim(int newSize) {
-        if (newSize < size) {
-            float[] newVals = Arrays.copyOf(vals, size);
-            Arrays.sort(newVals);
+        sort();
+        if (newSize <= 0) {
+            inds = new int[0];
+            vals = new float[0];
+            size = 0;
+        } else if (newSize < size) {
+            float[] sortedVals = Arrays.copyOf(vals, size);
+            Arrays.sort(sortedVals);
+            float threshold = sortedVals[size - newSize];
+            int numOfTiesToKeep = newSize;
+            for (int i = size - 1; i >= 0 && sortedVals[i] > threshold; i--) {
+                numOfTiesToKeep--;
+            }
             int[] newInds = new int[newSize];
-            float smallestVal = newVals[0];
-            for (int i = 0; i < newSize; i++) {
-                double val = newVals[newVals.length - i - 1];
-                for (int j = 0; j < size; j++)
-                    if (vals[j] == val) {
-                        newInds[i] = inds[j];
-                        vals[j] = smallestVal;
-                    }
+            float[] newVals = new float[newSize];
+            int newPos = 0;
+            for (int i = 0; i < size; i++) {
+                if (vals[i] > threshold || (vals[i] == threshold && numOfTiesToKeep-- > 0)) {
+                    newInds[newPos] = inds[i];
+                    newVals[newPos] = vals[i];
+                    newPos++;
+                }
             }
             inds = newInds;
-            vals = Arrays.copyOfRange(newVals, size - newSize, size);
+            vals = newVals;
             size = newSize;
         }
     }
@@ -71,8 +131,168 @@ public class SparseVector {
     }
 
     public void addValues(SparseVector vector) {
-        for (int i = 0; i < vector.size; i++) {
-            addValue(vector.inds[i], vector.vals[i]);
+        axpy(1.0, vector);
+    }
+
+    /**
+     * this = this + a * x
+     */
+
+    public void axpy(double a, SparseVector x) {
+        sort();
+        x.checkSorted();
+        int[] newInds = new int[size + x.size];
+        float[] newVals = new float[size + x.size];
+        int i = 0;
+        int j = 0;
+        int newSize = 0;
+        while (i < size && j < x.size) {
+            if (inds[i] < x.inds[j]) {
+                newInds[newSize] = inds[i];
+                newVals[newSize++] = vals[i++];
+            } else if (inds[i] > x.inds[j]) {
+                newInds[newSize] = x.inds[j];
+                newVals[newSize++] = (float) (a * x.vals[j++]);
+            } else {
+                newInds[newSize] = inds[i];
+                newVals[newSize++] = (float) (vals[i++] + a * x.vals[j++]);
+            }
+        }
+        while (i < size) {
+            newInds[newSize] = inds[i];
+            newVals[newSize++] = vals[i++];
+        }
+        while (j < x.size) {
+            newInds[newSize] = x.inds[j];
+            newVals[newSize++] = (float) (a * x.vals[j++]);
+        }
+        inds = newInds;
+        vals = newVals;
+        size = newSize;
+    }
+
+    public double dot(SparseVector other) {
+        checkSorted();
+        other.checkSorted();
+        if (size > other.size) {
+            return other.dot(this);
+        }
+        double result = 0;
+        if (size * 16 < other.size) {
+            //much smaller vector, look up its values in the other vector
+            int from = 0;
+            for (int i = 0; i < size && from < other.size; i++) {
+                int pos = Arrays.binarySearch(other.inds, from, other.size, inds[i]);
+                if (pos >= 0) {
+                    result += vals[i] * other.vals[pos];
+                    from = pos + 1;
+                } else {
+                    from = -pos - 1;
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while (i < size && j < other.size) {
+                if (inds[i] < other.inds[j]) {
+                    i++;
+                } else if (inds[i] > other.inds[j]) {
+                    j++;
+                } else {
+                    result += vals[i++] * other.vals[j++];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Dot product with a dense vector. Indices outside of the dense vector are ignored.
+     */
+
+    public double dot(float[] dense) {
+        double result = 0;
+        for (int i = 0; i < size; i++) {
+            int ind = inds[i];
+            if (ind >= 0 && ind < dense.length) {
+                result += vals[i] * dense[ind];
+            }
+        }
+        return result;
+    }
+
+    public double norm() {
+        checkSorted();
+        double sumOfSquares = 0;
+        for (int i = 0; i < size; i++) {
+            sumOfSquares += vals[i] * vals[i];
+        }
+        return Math.sqrt(sumOfSquares);
+    }
+
+    public double cosine(SparseVector other) {
+        double norms = norm() * other.norm();
+        if (norms == 0) {
+            return 0;
+        }
+        return dot(other) / norms;
+    }
+
+    /**
+     * Sorts the values that were added with {@link #append(int, float)} and releases the unused capacity
+     */
+
+    @Override
+    public void compact() {
+        sort();
+        if (inds.length > size) {
+            inds = Arrays.copyOf(inds, size);
+            vals = Arrays.copyOf(vals, size);
+        }
+    }
+
+    @JsonIgnore
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    private void checkSorted() {
+        if (!sorted) {
+            throw new RuntimeException("Vector contains appended values that are not sorted yet, call compact() first");
+        }
+    }
+
+    private void sort() {
+        if (sorted) {
+            return;
+        }
+        //pack every entry in a long, with the index in the highest bits, so sorting the longs sorts on index
+        long[] packed = new long[size];
+        for (int i = 0; i < size; i++) {
+            packed[i] = ((long) inds[i] << 32) | (Float.floatToRawIntBits(vals[i]) & 0xFFFFFFFFL);
+        }
+        Arrays.sort(packed);
+        int newSize = 0;
+        for (int i = 0; i < size; i++) {
+            int ind = (int) (packed[i] >> 32);
+            float val = Float.intBitsToFloat((int) packed[i]);
+            if (newSize > 0 && inds[newSize - 1] == ind) {
+                vals[newSize - 1] += val;
+            } else {
+                inds[newSize] = ind;
+                vals[newSize] = val;
+                newSize++;
+            }
+        }
+        size = newSize;
+        sorted = true;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > inds.length) {
+            int newLength = Math.max(capacity, inds.length * 2 + 1);
+            inds = Arrays.copyOf(inds, newLength);
+            vals = Arrays.copyOf(vals, newLength);
         }
     }
 }
@@ -0,0 +1,260 @@
+package be.bagofwords.counts;
+
+import java.util.*;
+
+/**
+ * Bounded counter that keeps (approximate) counts for the k most frequent keys, using the Space-Saving algorithm
+ * (Metwally et al., 2005). Memory is O(k), whatever the number of distinct keys. When a new key arrives and the
+ * counter is full, the key with the smallest count is evicted and the new key inherits its count. The count of a
+ * key is therefore an upper bound of its true count, which overestimates it by at most {@link #getError(Object)}.
+ * Every key with a true count larger than getTotal()/k is guaranteed to be tracked.
+ */
+
+public class TopKCounter<T extends Object> {
+
+    private final int k;
+    private final Map<T, Entry<T>> entries;
+    //min-heap on count, so the entry to evict is always at position 0
+    private final Entry<T>[] heap;
+    private int size;
+    private long total;
+
+    public TopKCounter(int k) {
+        if (k <= 0) {
+            throw new RuntimeException("Incorrect k:" + k);
+        }
+        this.k = k;
+        this.entries = new HashMap<>();
+        this.heap = new Entry[k];
+    }
+
+    public void inc(T s) {
+        inc(s, 1l);
+    }
+
+    /**
+     * @param count should not be negative, the counts of the Space-Saving algorithm can only increase
+     */
+
+    public synchronized void inc(T s, long count) {
+        if (count < 0) {
+            throw new RuntimeException("Incorrect count " + count + ", counts can only be increased");
+        }
+        total += count;
+        Entry<T> entry = entries.get(s);
+        if (entry != null) {
+            entry.count += count;
+            siftDown(entry.heapInd);
+        } else if (size < k) {
+            addEntry(new Entry<>(s, count, 0));
+        } else {
+            Entry<T> min = heap[0];
+            entries.remove(min.key);
+            min.key = s;
+            min.error = min.count;
+            min.count += count;
+            entries.put(s, min);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * @return an upper bound of the count of this key, or 0 if the key is not tracked
+     */
+
+    public synchronized long get(T s) {
+        Entry<T> entry = entries.get(s);
+        return entry == null ? 0 : entry.count;
+    }
+
+    /**
+     * @return the maximum overestimation of the count of this key
+     */
+
+    public synchronized long getError(T s) {
+        Entry<T> entry = entries.get(s);
+        return entry == null ? 0 : entry.error;
+    }
+
+    /**
+     * @return a lower bound of the count of this key
+     */
+
+    public synchronized long getGuaranteedCount(T s) {
+        Entry<T> entry = entries.get(s);
+        return entry == null ? 0 : entry.count - entry.error;
+    }
+
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public synchronized List<T> sortedKeys() {
+        List<Entry<T>> sortedEntries = new ArrayList<>(Arrays.asList(heap).subList(0, size));
+        Collections.sort(sortedEntries, new Comparator<Entry<T>>() {
+            @Override
+            public int compare(Entry<T> o1, Entry<T> o2) {
+                return -Long.compare(o1.count, o2.count);
+            }
+        });
+        List<T> result = new ArrayList<>(size);
+        for (Entry<T> entry : sortedEntries) {
+            result.add(entry.key);
+        }
+        return result;
+    }
+
+    /**
+     * Merge the counts of another (typically per-thread) counter into this counter. A key that is missing in one of
+     * the counters could have had a count up to the minimum count of that counter, which is added to its count and
+     * error.
+     */
+
+    public void addAll(TopKCounter<T> other) {
+        List<Entry<T>> otherEntries;
+        long otherMin;
+        long otherTotal;
+        synchronized (other) {
+            otherEntries = new ArrayList<>(other.size);
+            for (int i = 0; i < other.size; i++) {
+                Entry<T> entry = other.heap[i];
+                otherEntries.add(new Entry<>(entry.key, entry.count, entry.error));
+            }
+            otherMin = other.getMinCount();
+            otherTotal = other.total;
+        }
+        synchronized (this) {
+            long thisMin = getMinCount();
+            Map<T, Entry<T>> merged = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                Entry<T> entry = heap[i];
+                merged.put(entry.key, new Entry<>(entry.key, entry.count + otherMin, entry.error + otherMin));
+            }
+            for (Entry<T> otherEntry : otherEntries) {
+                Entry<T> entry = merged.get(otherEntry.key);
+                if (entry == null) {
+                    merged.put(otherEntry.key, new Entry<>(otherEntry.key, otherEntry.count + thisMin, otherEntry.error + thisMin));
+                } else {
+                    //the key is present in both counters, we should not have added otherMin
+                    entry.count += otherEntry.count - otherMin;
+                    entry.error += otherEntry.error - otherMin;
+                }
+            }
+            List<Entry<T>> mergedEntries = new ArrayList<>(merged.values());
+            Collections.sort(mergedEntries, new Comparator<Entry<T>>() {
+                @Override
+                public int compare(Entry<T> o1, Entry<T> o2) {
+                    return -Long.compare(o1.count, o2.count);
+                }
+            });
+            clearEntries();
+            for (int i = 0; i < Math.min(k, mergedEntries.size()); i++) {
+                addEntry(mergedEntries.get(i));
+            }
+            total += otherTotal;
+        }
+    }
+
+    public synchronized void clear() {
+        clearEntries();
+        total = 0;
+    }
+
+    /**
+     * @return a counter with the (upper bounds of the) counts of all tracked keys
+     */
+
+    public synchronized Counter<T> toCounter() {
+        Counter<T> result = new Counter<>();
+        for (int i = 0; i < size; i++) {
+            result.set(heap[i].key, heap[i].count);
+        }
+        return result;
+    }
+
+    /**
+     * The count that a key that is not tracked could at most have
+     */
+
+    private long getMinCount() {
+        return size < k ? 0 : heap[0].count;
+    }
+
+    private void clearEntries() {
+        entries.clear();
+        Arrays.fill(heap, null);
+        size = 0;
+    }
+
+    private void addEntry(Entry<T> entry) {
+        entries.put(entry.key, entry);
+        heap[size] = entry;
+        entry.heapInd = size;
+        size++;
+        siftUp(entry.heapInd);
+    }
+
+    private void siftUp(int ind) {
+        Entry<T> entry = heap[ind];
+        while (ind > 0) {
+            int parentInd = (ind - 1) >>> 1;
+            Entry<T> parent = heap[parentInd];
+            if (parent.count <= entry.count) {
+                break;
+            }
+            heap[ind] = parent;
+            parent.heapInd = ind;
+            ind = parentInd;
+        }
+        heap[ind] = entry;
+        entry.heapInd = ind;
+    }
+
+    private void siftDown(int ind) {
+        Entry<T> entry = heap[ind];
+        while (true) {
+            int childInd = 2 * ind + 1;
+            if (childInd >= size) {
+                break;
+            }
+            if (childInd + 1 < size && heap[childInd + 1].count < heap[childInd].count) {
+                childInd++;
+            }
+            Entry<T> child = heap[childInd];
+            if (entry.count <= child.count) {
+                break;
+            }
+            heap[ind] = child;
+            child.heapInd = ind;
+            ind = childInd;
+        }
+        heap[ind] = entry;
+        entry.heapInd = ind;
+    }
+
+    @Override
+    public String toString() {
+        return toCounter().toString();
+    }
+
+    private static class Entry<T> {
+        private T key;
+        private long count;
+        private long error;
+        private int heapInd;
+
+        private Entry(T key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
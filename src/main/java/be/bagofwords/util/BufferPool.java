@@ -0,0 +1,128 @@
+package be.bagofwords.util;
+
+import be.bagofwords.logging.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thread-local pool of byte arrays, for temporary buffers on hot paths (serialization, compression, sockets). Arrays
+ * are grouped in size classes (powers of two, from 64 bytes to 1 MB) and every thread keeps a few arrays of every
+ * size class, up to 4 MB in total. Larger arrays are not pooled. A leased array can be longer than requested and its
+ * contents are not cleared. Arrays have to be released on the thread that leased them to be reused, and must not be
+ * used after they were released.
+ * <p>
+ * In debug mode, all leases are tracked with the stack trace of the caller, so leaked buffers can be found with
+ * {@link #getLeakedBuffers()}, and releasing a buffer twice throws an exception.
+ */
+
+public class BufferPool {
+
+    private static final int MIN_SIZE_CLASS = 6;
+    private static final int MAX_SIZE_CLASS = 20;
+    private static final int NUM_OF_SIZE_CLASSES = MAX_SIZE_CLASS - MIN_SIZE_CLASS + 1;
+    private static final int MAX_BUFFERS_PER_SIZE_CLASS = 4;
+    private static final int MAX_RETAINED_BYTES_PER_THREAD = 4 * 1024 * 1024;
+
+    private static final ThreadLocal<byte[][][]> pools = new ThreadLocal<byte[][][]>() {
+        @Override
+        protected byte[][][] initialValue() {
+            return new byte[NUM_OF_SIZE_CLASSES][MAX_BUFFERS_PER_SIZE_CLASS][];
+        }
+    };
+    private static final ThreadLocal<int[]> poolSizes = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            //the number of pooled buffers of every size class, followed by the total size of the pooled buffers
+            return new int[NUM_OF_SIZE_CLASSES + 1];
+        }
+    };
+
+    private static volatile boolean debug = false;
+    private static final Map<byte[], Exception> leases = Collections.synchronizedMap(new IdentityHashMap<byte[], Exception>());
+
+    /**
+     * @return an array of at least minSize bytes
+     */
+
+    public static byte[] lease(int minSize) {
+        int sizeClass = getSizeClass(minSize);
+        byte[] result = null;
+        if (sizeClass != -1) {
+            int[] sizes = poolSizes.get();
+            if (sizes[sizeClass] > 0) {
+                byte[][] pool = pools.get()[sizeClass];
+                result = pool[--sizes[sizeClass]];
+                pool[sizes[sizeClass]] = null;
+                sizes[NUM_OF_SIZE_CLASSES] -= result.length;
+            } else {
+                result = new byte[1 << (sizeClass + MIN_SIZE_CLASS)];
+            }
+        } else {
+            result = new byte[minSize];
+        }
+        if (debug) {
+            leases.put(result, new Exception("Buffer of " + result.length + " bytes leased by thread " + Thread.currentThread().getName()));
+        }
+        return result;
+    }
+
+    public static void release(byte[] buffer) {
+        if (debug && leases.remove(buffer) == null) {
+            throw new RuntimeException("Buffer of " + buffer.length + " bytes was not leased or was already released");
+        }
+        int sizeClass = getSizeClass(buffer.length);
+        if (sizeClass != -1 && buffer.length == 1 << (sizeClass + MIN_SIZE_CLASS)) {
+            int[] sizes = poolSizes.get();
+            if (sizes[sizeClass] < MAX_BUFFERS_PER_SIZE_CLASS && sizes[NUM_OF_SIZE_CLASSES] + buffer.length <= MAX_RETAINED_BYTES_PER_THREAD) {
+                pools.get()[sizeClass][sizes[sizeClass]++] = buffer;
+                sizes[NUM_OF_SIZE_CLASSES] += buffer.length;
+            }
+        }
+    }
+
+    public static boolean isDebug() {
+        return debug;
+    }
+
+    /**
+     * Only buffers leased after debug mode was enabled are tracked
+     */
+
+    public static void setDebug(boolean debug) {
+        BufferPool.debug = debug;
+        if (!debug) {
+            leases.clear();
+        }
+    }
+
+    /**
+     * @return for every buffer that is leased and not released (in debug mode), an exception with the stack trace of
+     * the lease
+     */
+
+    public static List<Exception> getLeakedBuffers() {
+        synchronized (leases) {
+            return new ArrayList<>(leases.values());
+        }
+    }
+
+    public static void logLeakedBuffers() {
+        List<Exception> leakedBuffers = getLeakedBuffers();
+        for (Exception leakedBuffer : leakedBuffers) {
+            Log.w("Leaked buffer", leakedBuffer);
+        }
+    }
+
+    private static int getSizeClass(int size) {
+        if (size > 1 << MAX_SIZE_CLASS) {
+            return -1;
+        }
+        int bits = size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+        return Math.max(bits, MIN_SIZE_CLASS) - MIN_SIZE_CLASS;
+    }
+
+}
@@ -2,6 +2,10 @@ package be.bagofwords.util;
 
 /**
  * Created by Koen Deschacht (koendeschacht@gmail.com) on 26/10/14.
+ * <p>
+ * Implementing classes need a public constructor to read the bytes back. SerializationUtils prefers a constructor
+ * with arguments (byte[] bytes, int offset, int length), then (ByteBuffer bytes), and only then (byte[] bytes), which
+ * requires a copy when the object is read from a region of a larger array.
  */
 public interface ByteArraySerializable {
 
@@ -0,0 +1,18 @@
+package be.bagofwords.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Compact binary encoding of objects of one class, used by {@link SerializationUtils} instead of JSON. Register codecs
+ * with {@link Codecs#register(Class, int, Codec)}.
+ */
+
+public interface Codec<T> {
+
+    void write(T value, DataOutputStream os) throws IOException;
+
+    T read(DataInputStream is) throws IOException;
+
+}
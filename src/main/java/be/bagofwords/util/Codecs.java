@@ -0,0 +1,480 @@
+package be.bagofwords.util;
+
+import be.bagofwords.counts.Counter;
+import be.bagofwords.counts.SparseVector;
+
+import java.io.*;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of binary {@link Codec}s. {@link SerializationUtils} consults this registry before falling back to JSON.
+ * <p>
+ * Encoded values start with a marker byte that can never start a UTF-8 encoded JSON document, so values that were
+ * stored as JSON before a codec was registered for their class can still be read. The marker is followed by the id of
+ * the codec, so a value can be read as any class that it is an instance of (e.g. a value written as an ArrayList can be
+ * read as a Collection), or that it can be copied into (e.g. a HashMap can be read as a LinkedHashMap).
+ * <p>
+ * Built-in codecs exist for Counter, Pair, KeyValue, SparseVector, primitive arrays, String arrays and lists, sets and
+ * maps. The elements of these containers (keys, values, ...) are written with a type tag and can be null, Long,
+ * Integer, Double, Float, String or Boolean. Values with other elements are written as JSON.
+ */
+
+public class Codecs {
+
+    public static final byte MARKER = (byte) 0xC1;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_LONG = 1;
+    private static final byte TAG_INT = 2;
+    private static final byte TAG_DOUBLE = 3;
+    private static final byte TAG_FLOAT = 4;
+    private static final byte TAG_STRING = 5;
+    private static final byte TAG_BOOLEAN = 6;
+
+    /**
+     * Ids below this value are reserved for the built-in codecs
+     */
+    public static final int MIN_CUSTOM_ID = 64;
+
+    private static final Map<Class, Codec> codecs = new ConcurrentHashMap<>();
+    private static final Map<Class, Integer> ids = new ConcurrentHashMap<>();
+    private static final Codec[] codecsById = new Codec[256];
+
+    static {
+        registerBuiltInCodecs();
+    }
+
+    /**
+     * @param id a unique id (from {@link #MIN_CUSTOM_ID} to 255) that is written with every value. Several classes can
+     *           share a codec and its id.
+     */
+
+    public static <T> void register(Class<T> objectClass, int id, Codec<T> codec) {
+        if (id < MIN_CUSTOM_ID || id > 255) {
+            throw new RuntimeException("Invalid codec id " + id + ", custom codecs should use an id from " + MIN_CUSTOM_ID + " to 255");
+        }
+        registerWithId(objectClass, id, codec);
+    }
+
+    private static <T> void registerWithId(Class<T> objectClass, int id, Codec<T> codec) {
+        synchronized (codecsById) {
+            if (codecsById[id] != null && codecsById[id] != codec) {
+                throw new RuntimeException("Codec id " + id + " is already used by another codec");
+            }
+            codecsById[id] = codec;
+            ids.put(objectClass, id);
+            codecs.put(objectClass, codec);
+        }
+    }
+
+    public static void unregister(Class objectClass) {
+        synchronized (codecsById) {
+            codecs.remove(objectClass);
+            Integer id = ids.remove(objectClass);
+            if (id != null && !ids.containsValue(id)) {
+                codecsById[id] = null;
+            }
+        }
+    }
+
+    public static <T> Codec<T> getCodec(Class<T> objectClass) {
+        return codecs.get(objectClass);
+    }
+
+    /**
+     * @return the encoded value, or null if there is no codec for this class or the value contains elements that
+     * the codec does not support
+     */
+
+    public static <T> byte[] encode(T value, Class<T> objectClass) {
+        Codec<T> codec = getCodec(objectClass);
+        if (codec == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(bos);
+            dos.writeByte(MARKER);
+            dos.writeByte(ids.get(objectClass));
+            codec.write(value, dos);
+            dos.flush();
+            return bos.toByteArray();
+        } catch (UnsupportedElementException exp) {
+            return null;
+        } catch (IOException exp) {
+            throw new RuntimeException("Failed to encode " + value, exp);
+        }
+    }
+
+    public static boolean isEncoded(byte[] bytes, int offset, int length) {
+        return length > 0 && bytes[offset] == MARKER;
+    }
+
+    public static <T> T decode(byte[] bytes, int offset, int length, Class<T> objectClass) {
+        if (length < 2) {
+            throw new RuntimeException("Failed to decode object of class " + objectClass + ", no codec id");
+        }
+        int id = bytes[offset + 1] & 0xFF;
+        Codec codec = codecsById[id];
+        if (codec == null) {
+            throw new RuntimeException("No codec registered with id " + id + " to decode object of class " + objectClass);
+        }
+        Object result;
+        try {
+            DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes, offset + 2, length - 2));
+            result = codec.read(dis);
+        } catch (IOException exp) {
+            throw new RuntimeException("Failed to decode object of class " + objectClass, exp);
+        }
+        return convert(result, objectClass);
+    }
+
+    /**
+     * Values are decoded to the class of the codec that wrote them, which could be different from the class that the
+     * reader expects
+     */
+
+    private static <T> T convert(Object value, Class<T> objectClass) {
+        if (objectClass.isInstance(value)) {
+            return (T) value;
+        }
+        boolean isMap = value instanceof Map && Map.class.isAssignableFrom(objectClass);
+        boolean isCollection = value instanceof Collection && Collection.class.isAssignableFrom(objectClass);
+        if ((isMap || isCollection) && !objectClass.isInterface() && !Modifier.isAbstract(objectClass.getModifiers())) {
+            try {
+                Object result = objectClass.newInstance();
+                if (isMap) {
+                    ((Map) result).putAll((Map) value);
+                } else {
+                    ((Collection) result).addAll((Collection) value);
+                }
+                return (T) result;
+            } catch (InstantiationException | IllegalAccessException exp) {
+                throw new RuntimeException("Could not create an object of class " + objectClass, exp);
+            }
+        }
+        throw new RuntimeException("A value of class " + value.getClass() + " can not be read as " + objectClass);
+    }
+
+    public static void writeElement(Object value, DataOutputStream os) throws IOException {
+        if (value == null) {
+            os.writeByte(TAG_NULL);
+        } else if (value instanceof Long) {
+            os.writeByte(TAG_LONG);
+            os.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            os.writeByte(TAG_INT);
+            os.writeInt((Integer) value);
+        } else if (value instanceof Double) {
+            os.writeByte(TAG_DOUBLE);
+            os.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            os.writeByte(TAG_FLOAT);
+            os.writeFloat((Float) value);
+        } else if (value instanceof String) {
+            os.writeByte(TAG_STRING);
+            writeString((String) value, os);
+        } else if (value instanceof Boolean) {
+            os.writeByte(TAG_BOOLEAN);
+            os.writeBoolean((Boolean) value);
+        } else {
+            throw new UnsupportedElementException();
+        }
+    }
+
+    public static Object readElement(DataInputStream is) throws IOException {
+        byte tag = is.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_LONG:
+                return is.readLong();
+            case TAG_INT:
+                return is.readInt();
+            case TAG_DOUBLE:
+                return is.readDouble();
+            case TAG_FLOAT:
+                return is.readFloat();
+            case TAG_STRING:
+                return readString(is);
+            case TAG_BOOLEAN:
+                return is.readBoolean();
+            default:
+                throw new IOException("Unknown type tag " + tag);
+        }
+    }
+
+    private static void writeString(String value, DataOutputStream os) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        os.writeInt(bytes.length);
+        os.write(bytes);
+    }
+
+    private static String readString(DataInputStream is) throws IOException {
+        byte[] bytes = new byte[is.readInt()];
+        is.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void registerBuiltInCodecs() {
+        registerWithId(Counter.class, 1, new Codec<Counter>() {
+            @Override
+            public void write(Counter value, DataOutputStream os) throws IOException {
+                Set<Map.Entry<Object, Long>> entries = value.entrySet();
+                os.writeInt(entries.size());
+                for (Map.Entry<Object, Long> entry : entries) {
+                    writeElement(entry.getKey(), os);
+                    os.writeLong(entry.getValue());
+                }
+            }
+
+            @Override
+            public Counter read(DataInputStream is) throws IOException {
+                Counter<Object> result = new Counter<>();
+                int size = is.readInt();
+                for (int i = 0; i < size; i++) {
+                    Object key = readElement(is);
+                    result.set(key, is.readLong());
+                }
+                return result;
+            }
+        });
+        registerWithId(Pair.class, 2, new Codec<Pair>() {
+            @Override
+            public void write(Pair value, DataOutputStream os) throws IOException {
+                writeElement(value.getFirst(), os);
+                writeElement(value.getSecond(), os);
+            }
+
+            @Override
+            public Pair read(DataInputStream is) throws IOException {
+                Object first = readElement(is);
+                return new Pair<>(first, readElement(is));
+            }
+        });
+        registerWithId(KeyValue.class, 3, new Codec<KeyValue>() {
+            @Override
+            public void write(KeyValue value, DataOutputStream os) throws IOException {
+                os.writeLong(value.getKey());
+                writeElement(value.getValue(), os);
+            }
+
+            @Override
+            public KeyValue read(DataInputStream is) throws IOException {
+                long key = is.readLong();
+                return new KeyValue<>(key, readElement(is));
+            }
+        });
+        registerWithId(SparseVector.class, 4, new Codec<SparseVector>() {
+            @Override
+            public void write(SparseVector value, DataOutputStream os) throws IOException {
+                os.writeInt(value.size);
+                for (int i = 0; i < value.size; i++) {
+                    os.writeInt(value.inds[i]);
+                    os.writeFloat(value.vals[i]);
+                }
+            }
+
+            @Override
+            public SparseVector read(DataInputStream is) throws IOException {
+                int size = is.readInt();
+                SparseVector result = new SparseVector(size);
+                for (int i = 0; i < size; i++) {
+                    result.append(is.readInt(), is.readFloat());
+                }
+                result.compact();
+                return result;
+            }
+        });
+        registerArrayCodecs();
+        registerCollectionCodecs();
+    }
+
+    private static void registerArrayCodecs() {
+        registerWithId(byte[].class, 5, new Codec<byte[]>() {
+            @Override
+            public void write(byte[] value, DataOutputStream os) throws IOException {
+                os.writeInt(value.length);
+                os.write(value);
+            }
+
+            @Override
+            public byte[] read(DataInputStream is) throws IOException {
+                byte[] result = new byte[is.readInt()];
+                is.readFully(result);
+                return result;
+            }
+        });
+        registerWithId(int[].class, 6, new Codec<int[]>() {
+            @Override
+            public void write(int[] value, DataOutputStream os) throws IOException {
+                os.writeInt(value.length);
+                for (int v : value) {
+                    os.writeInt(v);
+                }
+            }
+
+            @Override
+            public int[] read(DataInputStream is) throws IOException {
+                int[] result = new int[is.readInt()];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = is.readInt();
+                }
+                return result;
+            }
+        });
+        registerWithId(long[].class, 7, new Codec<long[]>() {
+            @Override
+            public void write(long[] value, DataOutputStream os) throws IOException {
+                os.writeInt(value.length);
+                for (long v : value) {
+                    os.writeLong(v);
+                }
+            }
+
+            @Override
+            public long[] read(DataInputStream is) throws IOException {
+                long[] result = new long[is.readInt()];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = is.readLong();
+                }
+                return result;
+            }
+        });
+        registerWithId(float[].class, 8, new Codec<float[]>() {
+            @Override
+            public void write(float[] value, DataOutputStream os) throws IOException {
+                os.writeInt(value.length);
+                for (float v : value) {
+                    os.writeFloat(v);
+                }
+            }
+
+            @Override
+            public float[] read(DataInputStream is) throws IOException {
+                float[] result = new float[is.readInt()];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = is.readFloat();
+                }
+                return result;
+            }
+        });
+        registerWithId(double[].class, 9, new Codec<double[]>() {
+            @Override
+            public void write(double[] value, DataOutputStream os) throws IOException {
+                os.writeInt(value.length);
+                for (double v : value) {
+                    os.writeDouble(v);
+                }
+            }
+
+            @Override
+            public double[] read(DataInputStream is) throws IOException {
+                double[] result = new double[is.readInt()];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = is.readDouble();
+                }
+                return result;
+            }
+        });
+        registerWithId(String[].class, 10, new Codec<String[]>() {
+            @Override
+            public void write(String[] value, DataOutputStream os) throws IOException {
+                os.writeInt(value.length);
+                for (String v : value) {
+                    writeElement(v, os);
+                }
+            }
+
+            @Override
+            public String[] read(DataInputStream is) throws IOException {
+                String[] result = new String[is.readInt()];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = (String) readElement(is);
+                }
+                return result;
+            }
+        });
+    }
+
+    private static void registerCollectionCodecs() {
+        Codec<List> listCodec = new Codec<List>() {
+            @Override
+            public void write(List value, DataOutputStream os) throws IOException {
+                writeCollection(value, os);
+            }
+
+            @Override
+            public List read(DataInputStream is) throws IOException {
+                int size = is.readInt();
+                List<Object> result = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    result.add(readElement(is));
+                }
+                return result;
+            }
+        };
+        registerWithId(List.class, 11, listCodec);
+        registerWithId(ArrayList.class, 11, (Codec) listCodec);
+        Codec<Set> setCodec = new Codec<Set>() {
+            @Override
+            public void write(Set value, DataOutputStream os) throws IOException {
+                writeCollection(value, os);
+            }
+
+            @Override
+            public Set read(DataInputStream is) throws IOException {
+                int size = is.readInt();
+                Set<Object> result = new HashSet<>();
+                for (int i = 0; i < size; i++) {
+                    result.add(readElement(is));
+                }
+                return result;
+            }
+        };
+        registerWithId(Set.class, 12, setCodec);
+        registerWithId(HashSet.class, 12, (Codec) setCodec);
+        Codec<Map> mapCodec = new Codec<Map>() {
+            @Override
+            public void write(Map value, DataOutputStream os) throws IOException {
+                Set<Map.Entry<Object, Object>> entries = value.entrySet();
+                os.writeInt(entries.size());
+                for (Map.Entry<Object, Object> entry : entries) {
+                    writeElement(entry.getKey(), os);
+                    writeElement(entry.getValue(), os);
+                }
+            }
+
+            @Override
+            public Map read(DataInputStream is) throws IOException {
+                int size = is.readInt();
+                Map<Object, Object> result = new HashMap<>();
+                for (int i = 0; i < size; i++) {
+                    Object key = readElement(is);
+                    result.put(key, readElement(is));
+                }
+                return result;
+            }
+        };
+        registerWithId(Map.class, 13, mapCodec);
+        registerWithId(HashMap.class, 13, (Codec) mapCodec);
+    }
+
+    private static void writeCollection(Collection<Object> values, DataOutputStream os) throws IOException {
+        os.writeInt(values.size());
+        for (Object value : values) {
+            writeElement(value, os);
+        }
+    }
+
+    /**
+     * Thrown when a container holds an element that can not be written with a type tag
+     */
+
+    public static class UnsupportedElementException extends RuntimeException {
+    }
+
+}
@@ -0,0 +1,189 @@
+package be.bagofwords.util;
+
+import java.io.*;
+
+/**
+ * Compression algorithm used by {@link IOUtils}, {@link SerializationUtils} and {@link SocketConnection}. Codecs are
+ * stateless (or internally synchronized) and can be shared between threads. See {@link CompressionCodecs} for the
+ * available codecs.
+ */
+
+public abstract class CompressionCodec {
+
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    private final byte id;
+
+    protected CompressionCodec(byte id) {
+        this.id = id;
+    }
+
+    /**
+     * Identifies this codec in values compressed with {@link CompressionCodecs#compress(byte[], CompressionCodec)}
+     */
+
+    public byte getId() {
+        return id;
+    }
+
+    public abstract byte[] compress(byte[] input, int offset, int length);
+
+    public abstract byte[] uncompress(byte[] input, int offset, int length);
+
+    public byte[] compress(byte[] input) {
+        return compress(input, 0, input.length);
+    }
+
+    public byte[] uncompress(byte[] input) {
+        return uncompress(input, 0, input.length);
+    }
+
+    /**
+     * Compresses everything written to the returned stream in blocks of {@link #DEFAULT_BLOCK_SIZE} bytes. Closing the
+     * returned stream marks the end of the compressed data and closes the wrapped stream.
+     */
+
+    public OutputStream createOutputStream(OutputStream os) {
+        return createOutputStream(os, DEFAULT_BLOCK_SIZE);
+    }
+
+    public OutputStream createOutputStream(OutputStream os, int blockSize) {
+        return new CompressingOutputStream(os, blockSize);
+    }
+
+    /**
+     * Reads data written to a stream created with {@link #createOutputStream(OutputStream)}
+     */
+
+    public InputStream createInputStream(InputStream is) {
+        return new UncompressingInputStream(is);
+    }
+
+    private class CompressingOutputStream extends OutputStream {
+
+        private final DataOutputStream os;
+        private final byte[] block;
+        private int blockLength;
+        private boolean closed;
+
+        public CompressingOutputStream(OutputStream os, int blockSize) {
+            if (blockSize <= 0) {
+                throw new RuntimeException("Incorrect block size " + blockSize);
+            }
+            this.os = new DataOutputStream(os);
+            this.block = new byte[blockSize];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (blockLength == block.length) {
+                writeBlock();
+            }
+            block[blockLength++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (blockLength == block.length) {
+                    writeBlock();
+                }
+                int toCopy = Math.min(length, block.length - blockLength);
+                System.arraycopy(bytes, offset, block, blockLength, toCopy);
+                blockLength += toCopy;
+                offset += toCopy;
+                length -= toCopy;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeBlock();
+            os.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                writeBlock();
+                //a block of length 0 marks the end of the stream
+                os.writeInt(0);
+                os.close();
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            if (blockLength > 0) {
+                byte[] compressed = compress(block, 0, blockLength);
+                os.writeInt(compressed.length);
+                os.write(compressed);
+                blockLength = 0;
+            }
+        }
+    }
+
+    private class UncompressingInputStream extends InputStream {
+
+        private final DataInputStream is;
+        private byte[] block;
+        private int position;
+        private boolean finished;
+
+        public UncompressingInputStream(InputStream is) {
+            this.is = new DataInputStream(is);
+            this.block = new byte[0];
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fillBlock()) {
+                return -1;
+            }
+            return block[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!fillBlock()) {
+                return -1;
+            }
+            int toCopy = Math.min(length, block.length - position);
+            System.arraycopy(block, position, bytes, offset, toCopy);
+            position += toCopy;
+            return toCopy;
+        }
+
+        @Override
+        public int available() {
+            return block.length - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            is.close();
+        }
+
+        private boolean fillBlock() throws IOException {
+            while (position == block.length) {
+                if (finished) {
+                    return false;
+                }
+                int length = is.readInt();
+                if (length == 0) {
+                    finished = true;
+                    return false;
+                }
+                byte[] compressed = new byte[length];
+                is.readFully(compressed);
+                block = uncompress(compressed, 0, length);
+                position = 0;
+            }
+            return true;
+        }
+    }
+
+}
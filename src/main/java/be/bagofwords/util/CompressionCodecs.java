@@ -0,0 +1,74 @@
+package be.bagofwords.util;
+
+/**
+ * The available {@link CompressionCodec}s.
+ * <p>
+ * Values compressed with {@link #compress(byte[], CompressionCodec)} start with the id of their codec, so
+ * {@link #uncompress(byte[])} does not need to know which codec was used. Deflate is the exception: its values are
+ * plain zlib streams, which always start with {@link DeflateCodec#ID}, so values compressed with
+ * {@link IOUtils#compressBytes(byte[])} can be read as well.
+ */
+
+public class CompressionCodecs {
+
+    public static final CompressionCodec DEFLATE = new DeflateCodec();
+    public static final CompressionCodec LZ4 = new Lz4Codec();
+    public static final CompressionCodec SNAPPY = new SnappyCodec();
+
+    private static final CompressionCodec[] codecs = new CompressionCodec[256];
+
+    static {
+        register(DEFLATE);
+        register(LZ4);
+        register(SNAPPY);
+    }
+
+    /**
+     * Makes the codec available to {@link #uncompress(byte[])}. Every codec needs a unique id.
+     */
+
+    public static synchronized void register(CompressionCodec codec) {
+        CompressionCodec current = codecs[codec.getId() & 0xFF];
+        if (current != null && current.getClass() != codec.getClass()) {
+            throw new RuntimeException("Id " + codec.getId() + " is already used by " + current);
+        }
+        if (current == null) {
+            codecs[codec.getId() & 0xFF] = codec;
+        }
+    }
+
+    public static CompressionCodec getCodec(byte id) {
+        CompressionCodec codec = codecs[id & 0xFF];
+        if (codec == null) {
+            throw new RuntimeException("Unknown compression codec " + id);
+        }
+        return codec;
+    }
+
+    public static byte[] compress(byte[] input, CompressionCodec codec) {
+        byte[] compressed = codec.compress(input);
+        if (codec.getId() == DeflateCodec.ID) {
+            return compressed;
+        }
+        byte[] result = new byte[compressed.length + 1];
+        result[0] = codec.getId();
+        System.arraycopy(compressed, 0, result, 1, compressed.length);
+        return result;
+    }
+
+    public static byte[] uncompress(byte[] input) {
+        return uncompress(input, 0, input.length);
+    }
+
+    public static byte[] uncompress(byte[] input, int offset, int length) {
+        if (length == 0) {
+            throw new RuntimeException("Failed to decompress object, no data");
+        }
+        byte id = input[offset];
+        if (id == DeflateCodec.ID) {
+            return getCodec(id).uncompress(input, offset, length);
+        }
+        return getCodec(id).uncompress(input, offset + 1, length - 1);
+    }
+
+}
@@ -0,0 +1,138 @@
+package be.bagofwords.util;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * zlib compression, compatible with the format of {@link IOUtils#compressBytes(byte[])}. Deflaters and inflaters hold
+ * native memory, so they are pooled and reused instead of being created for every call, and the native memory of
+ * instances that do not fit in the pool is released immediately with end().
+ */
+
+public class DeflateCodec extends CompressionCodec {
+
+    //first byte of every zlib stream created by java.util.zip.Deflater
+    public static final byte ID = 0x78;
+
+    private static final int MAX_POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final int level;
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger numOfPooledDeflaters = new AtomicInteger();
+    private final AtomicInteger numOfPooledInflaters = new AtomicInteger();
+
+    public DeflateCodec() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    public DeflateCodec(int level) {
+        super(ID);
+        this.level = level;
+    }
+
+    @Override
+    public byte[] compress(byte[] input, int offset, int length) {
+        Deflater deflater = borrowDeflater();
+        byte[] buffer = null;
+        try {
+            deflater.setInput(input, offset, length);
+            deflater.finish();
+            //upper bound of the compressed size (see deflateBound() in zlib), so normally the buffer is never grown
+            buffer = BufferPool.lease(length + (length >> 12) + (length >> 14) + (length >> 25) + 19);
+            int resultLength = 0;
+            while (!deflater.finished()) {
+                if (resultLength == buffer.length) {
+                    buffer = grow(buffer);
+                }
+                resultLength += deflater.deflate(buffer, resultLength, buffer.length - resultLength);
+            }
+            return Arrays.copyOf(buffer, resultLength);
+        } finally {
+            if (buffer != null) {
+                BufferPool.release(buffer);
+            }
+            releaseDeflater(deflater);
+        }
+    }
+
+    @Override
+    public byte[] uncompress(byte[] input, int offset, int length) {
+        Inflater inflater = borrowInflater();
+        byte[] buffer = null;
+        try {
+            inflater.setInput(input, offset, length);
+            buffer = BufferPool.lease(Math.max(64, length * 4));
+            int resultLength = 0;
+            while (!inflater.finished()) {
+                if (resultLength == buffer.length) {
+                    buffer = grow(buffer);
+                }
+                int count = inflater.inflate(buffer, resultLength, buffer.length - resultLength);
+                if (count == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new RuntimeException("Failed to decompress object, the compressed data is truncated");
+                }
+                resultLength += count;
+            }
+            return Arrays.copyOf(buffer, resultLength);
+        } catch (DataFormatException e) {
+            throw new RuntimeException("Failed to decompress object", e);
+        } finally {
+            if (buffer != null) {
+                BufferPool.release(buffer);
+            }
+            releaseInflater(inflater);
+        }
+    }
+
+    private static byte[] grow(byte[] buffer) {
+        byte[] result = BufferPool.lease(buffer.length * 2);
+        System.arraycopy(buffer, 0, result, 0, buffer.length);
+        BufferPool.release(buffer);
+        return result;
+    }
+
+    private Deflater borrowDeflater() {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            return new Deflater(level);
+        }
+        numOfPooledDeflaters.decrementAndGet();
+        return deflater;
+    }
+
+    private void releaseDeflater(Deflater deflater) {
+        deflater.reset();
+        if (numOfPooledDeflaters.incrementAndGet() <= MAX_POOL_SIZE) {
+            deflaters.offer(deflater);
+        } else {
+            numOfPooledDeflaters.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    private Inflater borrowInflater() {
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            return new Inflater();
+        }
+        numOfPooledInflaters.decrementAndGet();
+        return inflater;
+    }
+
+    private void releaseInflater(Inflater inflater) {
+        inflater.reset();
+        if (numOfPooledInflaters.incrementAndGet() <= MAX_POOL_SIZE) {
+            inflaters.offer(inflater);
+        } else {
+            numOfPooledInflaters.decrementAndGet();
+            inflater.end();
+        }
+    }
+
+}
@@ -4,6 +4,7 @@ import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 public class ExtendedDataInputStream implements Closeable {
@@ -14,10 +15,17 @@ public class ExtendedDataInputStream implements Closeable {
         standardCharset = Charset.forName("UTF-8");
     }
 
+    private static final int SCRATCH_SIZE = 8192;
+
     private DataInputStream dis;
+    //Arrays are read in large blocks in this buffer, and then converted
+    private final byte[] scratch;
+    private final ByteBuffer scratchBuffer;
 
     public ExtendedDataInputStream(InputStream is) {
         dis = new DataInputStream(is);
+        scratch = new byte[SCRATCH_SIZE];
+        scratchBuffer = ByteBuffer.wrap(scratch);
     }
 
     public boolean readBoolean() throws IOException {
@@ -64,40 +72,104 @@ public class ExtendedDataInputStream implements Closeable {
 
     public short[] readShortArray() throws IOException {
         short[] result = new short[dis.readInt()];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = dis.readShort();
+        for (int start = 0; start < result.length; start += SCRATCH_SIZE / 2) {
+            int length = Math.min(result.length - start, SCRATCH_SIZE / 2);
+            dis.readFully(scratch, 0, length * 2);
+            scratchBuffer.asShortBuffer().get(result, start, length);
         }
         return result;
     }
 
     public int[] readIntArray() throws IOException {
         int[] result = new int[dis.readInt()];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = dis.readInt();
+        for (int start = 0; start < result.length; start += SCRATCH_SIZE / 4) {
+            int length = Math.min(result.length - start, SCRATCH_SIZE / 4);
+            dis.readFully(scratch, 0, length * 4);
+            scratchBuffer.asIntBuffer().get(result, start, length);
         }
         return result;
     }
 
     public long[] readLongArray() throws IOException {
         long[] result = new long[dis.readInt()];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = dis.readLong();
+        for (int start = 0; start < result.length; start += SCRATCH_SIZE / 8) {
+            int length = Math.min(result.length - start, SCRATCH_SIZE / 8);
+            dis.readFully(scratch, 0, length * 8);
+            scratchBuffer.asLongBuffer().get(result, start, length);
         }
         return result;
     }
 
     public float[] readFloatArray() throws IOException {
         float[] result = new float[dis.readInt()];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = dis.readFloat();
+        for (int start = 0; start < result.length; start += SCRATCH_SIZE / 4) {
+            int length = Math.min(result.length - start, SCRATCH_SIZE / 4);
+            dis.readFully(scratch, 0, length * 4);
+            scratchBuffer.asFloatBuffer().get(result, start, length);
         }
         return result;
     }
 
     public double[] readDoubleArray() throws IOException {
         double[] result = new double[dis.readInt()];
+        for (int start = 0; start < result.length; start += SCRATCH_SIZE / 8) {
+            int length = Math.min(result.length - start, SCRATCH_SIZE / 8);
+            dis.readFully(scratch, 0, length * 8);
+            scratchBuffer.asDoubleBuffer().get(result, start, length);
+        }
+        return result;
+    }
+
+    public int readVarInt() throws IOException {
+        long value = readVarLong();
+        if ((value & ~0xFFFFFFFFL) != 0) {
+            throw new IOException("Variable-length value " + value + " does not fit in an int");
+        }
+        return (int) value;
+    }
+
+    public long readVarLong() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = dis.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed variable-length value");
+    }
+
+    public int readSignedVarInt() throws IOException {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public long readSignedVarLong() throws IOException {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public long[] readSortedLongsDelta() throws IOException {
+        long[] result = new long[readVarInt()];
+        for (int i = 0; i < result.length; i++) {
+            if (i == 0) {
+                result[i] = readSignedVarLong();
+            } else {
+                result[i] = result[i - 1] + readVarLong();
+            }
+        }
+        return result;
+    }
+
+    public int[] readSortedIntsDelta() throws IOException {
+        int[] result = new int[readVarInt()];
         for (int i = 0; i < result.length; i++) {
-            result[i] = dis.readDouble();
+            if (i == 0) {
+                result[i] = readSignedVarInt();
+            } else {
+                result[i] = result[i - 1] + readVarInt();
+            }
         }
         return result;
     }
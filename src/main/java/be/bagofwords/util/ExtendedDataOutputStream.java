@@ -1,6 +1,7 @@
 package be.bagofwords.util;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 public class ExtendedDataOutputStream implements Closeable, Flushable {
@@ -12,10 +13,19 @@ public class ExtendedDataOutputStream implements Closeable, Flushable {
         standardCharset = Charset.forName("UTF-8");
     }
 
+    private static final int SCRATCH_SIZE = 8192;
+
     private DataOutputStream dos;
+    //Arrays are converted to bytes in this buffer, so they can be written in large blocks
+    private final byte[] scratch;
+    private final ByteBuffer scratchBuffer;
+    private final byte[] varIntScratch;
 
     public ExtendedDataOutputStream(OutputStream os) {
         dos = new DataOutputStream(os);
+        scratch = new byte[SCRATCH_SIZE];
+        scratchBuffer = ByteBuffer.wrap(scratch);
+        varIntScratch = new byte[10];
     }
 
     public void write(boolean value) throws IOException {
@@ -60,36 +70,118 @@ public class ExtendedDataOutputStream implements Closeable, Flushable {
 
     public void write(short[] values) throws IOException {
         dos.writeInt(values.length);
-        for (short value : values) {
-            write(value);
+        for (int start = 0; start < values.length; start += SCRATCH_SIZE / 2) {
+            int length = Math.min(values.length - start, SCRATCH_SIZE / 2);
+            scratchBuffer.asShortBuffer().put(values, start, length);
+            dos.write(scratch, 0, length * 2);
         }
     }
 
     public void write(int[] values) throws IOException {
         dos.writeInt(values.length);
-        for (int value : values) {
-            write(value);
+        for (int start = 0; start < values.length; start += SCRATCH_SIZE / 4) {
+            int length = Math.min(values.length - start, SCRATCH_SIZE / 4);
+            scratchBuffer.asIntBuffer().put(values, start, length);
+            dos.write(scratch, 0, length * 4);
         }
     }
 
     public void write(long[] values) throws IOException {
         dos.writeInt(values.length);
-        for (long value : values) {
-            write(value);
+        for (int start = 0; start < values.length; start += SCRATCH_SIZE / 8) {
+            int length = Math.min(values.length - start, SCRATCH_SIZE / 8);
+            scratchBuffer.asLongBuffer().put(values, start, length);
+            dos.write(scratch, 0, length * 8);
         }
     }
 
     public void write(float[] values) throws IOException {
         dos.writeInt(values.length);
-        for (float value : values) {
-            write(value);
+        for (int start = 0; start < values.length; start += SCRATCH_SIZE / 4) {
+            int length = Math.min(values.length - start, SCRATCH_SIZE / 4);
+            scratchBuffer.asFloatBuffer().put(values, start, length);
+            dos.write(scratch, 0, length * 4);
         }
     }
 
     public void write(double[] values) throws IOException {
         dos.writeInt(values.length);
-        for (double value : values) {
-            write(value);
+        for (int start = 0; start < values.length; start += SCRATCH_SIZE / 8) {
+            int length = Math.min(values.length - start, SCRATCH_SIZE / 8);
+            scratchBuffer.asDoubleBuffer().put(values, start, length);
+            dos.write(scratch, 0, length * 8);
+        }
+    }
+
+    /**
+     * Variable-length encoding of a non-negative value: 7 bits per byte, small values take a single byte. Negative
+     * values take 5 bytes, use {@link #writeSignedVarInt(int)} for values that can be negative.
+     */
+
+    public void writeVarInt(int value) throws IOException {
+        writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Variable-length encoding of a non-negative value: 7 bits per byte, small values take a single byte. Negative
+     * values take 10 bytes, use {@link #writeSignedVarLong(long)} for values that can be negative.
+     */
+
+    public void writeVarLong(long value) throws IOException {
+        int length = 0;
+        while ((value & ~0x7FL) != 0) {
+            varIntScratch[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        varIntScratch[length++] = (byte) value;
+        dos.write(varIntScratch, 0, length);
+    }
+
+    /**
+     * Zigzag encoding, so values close to zero (positive or negative) take few bytes
+     */
+
+    public void writeSignedVarInt(int value) throws IOException {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    public void writeSignedVarLong(long value) throws IOException {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Write values sorted in ascending order as the differences between consecutive values, each encoded with a
+     * variable length.
+     */
+
+    public void writeSortedLongsDelta(long[] values) throws IOException {
+        writeVarInt(values.length);
+        long prev = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0) {
+                writeSignedVarLong(values[i]);
+            } else if (values[i] < prev) {
+                throw new RuntimeException("Values are not sorted, " + values[i] + " at position " + i + " is smaller than " + prev);
+            } else {
+                //difference could overflow a long, but is correct as an unsigned value
+                writeVarLong(values[i] - prev);
+            }
+            prev = values[i];
+        }
+    }
+
+    public void writeSortedIntsDelta(int[] values) throws IOException {
+        writeVarInt(values.length);
+        int prev = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0) {
+                writeSignedVarInt(values[i]);
+            } else if (values[i] < prev) {
+                throw new RuntimeException("Values are not sorted, " + values[i] + " at position " + i + " is smaller than " + prev);
+            } else {
+                writeVarInt(values[i] - prev);
+            }
+            prev = values[i];
         }
     }
 
@@ -1,13 +1,9 @@
 package be.bagofwords.util;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.zip.DataFormatException;
-import java.util.zip.Deflater;
-import java.util.zip.Inflater;
 
 /**
  * Created by koen on 8/04/17.
@@ -37,43 +33,27 @@ public class IOUtils {
     }
 
     public static byte[] compressBytes(byte[] input) {
-        Deflater compressor = new Deflater();
-        compressor.setLevel(Deflater.BEST_SPEED);
+        return CompressionCodecs.DEFLATE.compress(input);
+    }
 
-        compressor.setInput(input);
-        compressor.finish();
+    /**
+     * @return the compressed bytes, prefixed with the id of the codec if it is not {@link CompressionCodecs#DEFLATE}
+     */
 
-        ByteArrayOutputStream bos = new ByteArrayOutputStream(input.length);
+    public static byte[] compressBytes(byte[] input, CompressionCodec codec) {
+        return CompressionCodecs.compress(input, codec);
+    }
 
-        byte[] buf = new byte[1024 * 1024];
-        while (!compressor.finished()) {
-            int count = compressor.deflate(buf);
-            bos.write(buf, 0, count);
-        }
-        try {
-            bos.close();
-        } catch (IOException e) {
-            throw new RuntimeException("Unexpected exception while closing compressed array stream", e);
-        }
+    /**
+     * Uncompress bytes created with {@link #compressBytes(byte[])} or {@link #compressBytes(byte[], CompressionCodec)}
+     */
 
-        return bos.toByteArray();
+    public static byte[] uncompressBytes(byte[] input) {
+        return CompressionCodecs.uncompress(input);
     }
 
-    public static byte[] uncompressBytes(byte[] input) {
-        Inflater compressor = new Inflater();
-        compressor.setInput(input);
-        ByteArrayOutputStream bos = new ByteArrayOutputStream(input.length);
-        byte[] buf = new byte[1024 * 1024];
-        try {
-            while (!compressor.finished()) {
-                int count = compressor.inflate(buf);
-                bos.write(buf, 0, count);
-            }
-            bos.close();
-        } catch (IOException | DataFormatException e) {
-            throw new RuntimeException("Failed to decompress object", e);
-        }
-        return bos.toByteArray();
+    public static byte[] uncompressBytes(byte[] input, int offset, int length) {
+        return CompressionCodecs.uncompress(input, offset, length);
     }
 
 }
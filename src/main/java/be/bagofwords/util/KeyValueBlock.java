@@ -0,0 +1,295 @@
+package be.bagofwords.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only block of key-value pairs, sorted by key, in a compact columnar format (similar to the blocks of an
+ * SSTable):
+ * <ul>
+ * <li>keys are written as variable-length differences with the previous key. Every {@link #RESTART_INTERVAL} keys the
+ * full key is stored in a restart point, so a key can be found with a binary search on the restart points followed by
+ * a scan of at most {@link #RESTART_INTERVAL} keys</li>
+ * <li>values of a fixed width (long, double, int, float) are written as a packed column</li>
+ * <li>other values are written as a column of offsets followed by the data of all values</li>
+ * </ul>
+ * Values are encoded with {@link SerializationUtils#objectToBytesCheckForNull(Object, Class)} and only the values that
+ * are requested are decoded. With {@link NullEncoding#PRESENCE_TAG}, null values are marked in a bitmap instead, so
+ * no value is reserved to indicate null. The encoding is stored in the version byte of the block, so blocks in both
+ * encodings can be read.
+ */
+
+public class KeyValueBlock<T> {
+
+    public static final int RESTART_INTERVAL = 16;
+
+    private static final byte VERSION_NULL_SENTINEL = 1;
+    private static final byte VERSION_PRESENCE_BITMAP = 2;
+    //version, number of values, value width, number of restart points
+    private static final int HEADER_SIZE = 1 + 4 + 4 + 4;
+    private static final int RESTART_SIZE = 8 + 4;
+
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+    private final Class<T> valueClass;
+    private final Class[] genericParams;
+    private final int size;
+    private final int valueWidth;
+    private final int numOfRestarts;
+    private final int keysStart;
+    private final int valuesStart;
+    //-1 if null values are encoded with sentinels
+    private final int presenceStart;
+
+    public KeyValueBlock(byte[] bytes, Class<T> valueClass, Class... genericParams) {
+        this(bytes, 0, bytes.length, valueClass, genericParams);
+    }
+
+    public KeyValueBlock(byte[] bytes, int offset, int length, Class<T> valueClass, Class... genericParams) {
+        if (length < HEADER_SIZE || (bytes[offset] != VERSION_NULL_SENTINEL && bytes[offset] != VERSION_PRESENCE_BITMAP)) {
+            throw new RuntimeException("Not a key-value block (or an unsupported version)");
+        }
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.valueClass = valueClass;
+        this.genericParams = genericParams;
+        this.size = SerializationUtils.bytesToInt(bytes, offset + 1);
+        this.valueWidth = SerializationUtils.bytesToInt(bytes, offset + 5);
+        this.numOfRestarts = SerializationUtils.bytesToInt(bytes, offset + 9);
+        int keysLength = SerializationUtils.bytesToInt(bytes, offset + HEADER_SIZE + numOfRestarts * RESTART_SIZE);
+        this.keysStart = offset + HEADER_SIZE + numOfRestarts * RESTART_SIZE + 4;
+        if (bytes[offset] == VERSION_PRESENCE_BITMAP) {
+            this.presenceStart = keysStart + keysLength;
+            this.valuesStart = presenceStart + (size + 7) / 8;
+        } else {
+            this.presenceStart = -1;
+            this.valuesStart = keysStart + keysLength;
+        }
+    }
+
+    /**
+     * @param values sorted by key, without duplicate keys
+     */
+
+    public static <T> byte[] encode(List<KeyValue<T>> values, Class<T> valueClass) {
+        return encode(values, valueClass, NullEncoding.SENTINEL);
+    }
+
+    public static <T> byte[] encode(List<KeyValue<T>> values, Class<T> valueClass, NullEncoding nullEncoding) {
+        try {
+            boolean withBitmap = nullEncoding == NullEncoding.PRESENCE_TAG;
+            byte[] presence = withBitmap ? new byte[(values.size() + 7) / 8] : new byte[0];
+            int width = SerializationUtils.getWidth(valueClass);
+            int numOfRestarts = (values.size() + RESTART_INTERVAL - 1) / RESTART_INTERVAL;
+            ByteArrayOutputStream keysBos = new ByteArrayOutputStream();
+            ExtendedDataOutputStream keysOs = new ExtendedDataOutputStream(keysBos);
+            ByteArrayOutputStream valuesBos = new ByteArrayOutputStream();
+            int[] valueOffsets = width == -1 ? new int[values.size() + 1] : null;
+            long[] restartKeys = new long[numOfRestarts];
+            int[] restartOffsets = new int[numOfRestarts];
+            long prevKey = 0;
+            for (int i = 0; i < values.size(); i++) {
+                KeyValue<T> value = values.get(i);
+                long key = value.getKey();
+                if (i > 0 && key <= prevKey) {
+                    throw new RuntimeException("Values are not sorted by key, " + key + " at position " + i + " follows " + prevKey);
+                }
+                if (i % RESTART_INTERVAL == 0) {
+                    keysOs.flush();
+                    restartKeys[i / RESTART_INTERVAL] = key;
+                    restartOffsets[i / RESTART_INTERVAL] = keysBos.size();
+                } else {
+                    keysOs.writeVarLong(key - prevKey);
+                }
+                prevKey = key;
+                if (withBitmap) {
+                    if (value.getValue() != null) {
+                        presence[i / 8] |= 1 << (i % 8);
+                        valuesBos.write(SerializationUtils.nonNullObjectToBytes(value.getValue(), valueClass));
+                    } else if (width != -1) {
+                        //keep the column packed
+                        valuesBos.write(new byte[width]);
+                    }
+                } else {
+                    valuesBos.write(SerializationUtils.objectToBytesCheckForNull(value.getValue(), valueClass));
+                }
+                if (valueOffsets != null) {
+                    valueOffsets[i + 1] = valuesBos.size();
+                }
+            }
+            keysOs.flush();
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(HEADER_SIZE + numOfRestarts * RESTART_SIZE + keysBos.size() + valuesBos.size() + values.size() * 4 + 8);
+            DataOutputStream dos = new DataOutputStream(bos);
+            dos.writeByte(withBitmap ? VERSION_PRESENCE_BITMAP : VERSION_NULL_SENTINEL);
+            dos.writeInt(values.size());
+            dos.writeInt(width);
+            dos.writeInt(numOfRestarts);
+            for (int i = 0; i < numOfRestarts; i++) {
+                dos.writeLong(restartKeys[i]);
+                dos.writeInt(restartOffsets[i]);
+            }
+            dos.writeInt(keysBos.size());
+            keysBos.writeTo(dos);
+            dos.write(presence);
+            if (valueOffsets != null) {
+                for (int valueOffset : valueOffsets) {
+                    dos.writeInt(valueOffset);
+                }
+            }
+            valuesBos.writeTo(dos);
+            dos.flush();
+            return bos.toByteArray();
+        } catch (IOException exp) {
+            throw new RuntimeException("Failed to encode block of " + values.size() + " values", exp);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getKey(int index) {
+        checkIndex(index);
+        int restart = index / RESTART_INTERVAL;
+        long key = getRestartKey(restart);
+        int position = keysStart + getRestartOffset(restart);
+        for (int i = restart * RESTART_INTERVAL; i < index; i++) {
+            long delta = readVarLong(bytes, position);
+            position += getVarLongLength(delta);
+            key += delta;
+        }
+        return key;
+    }
+
+    public T getValue(int index) {
+        checkIndex(index);
+        int start;
+        int length;
+        if (valueWidth == -1) {
+            int offsetsStart = valuesStart;
+            int dataStart = offsetsStart + (size + 1) * 4;
+            start = dataStart + SerializationUtils.bytesToInt(bytes, offsetsStart + index * 4);
+            length = dataStart + SerializationUtils.bytesToInt(bytes, offsetsStart + (index + 1) * 4) - start;
+        } else {
+            start = valuesStart + index * valueWidth;
+            length = valueWidth;
+        }
+        if (presenceStart == -1) {
+            return SerializationUtils.bytesToObjectCheckForNull(bytes, start, length, valueClass, genericParams);
+        } else if ((bytes[presenceStart + index / 8] & (1 << (index % 8))) == 0) {
+            return null;
+        } else {
+            return SerializationUtils.bytesToNonNullObject(bytes, start, length, valueClass, genericParams);
+        }
+    }
+
+    /**
+     * @return the index of the key, or (-(insertion point) - 1) if the block does not contain the key (see
+     * {@link java.util.Arrays#binarySearch(long[], long)})
+     */
+
+    public int indexOf(long key) {
+        //find the last restart point with a key smaller than or equal to the key
+        int low = 0;
+        int high = numOfRestarts - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (getRestartKey(mid) <= key) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int restart = high;
+        if (restart < 0) {
+            return -1;
+        }
+        long currKey = getRestartKey(restart);
+        int index = restart * RESTART_INTERVAL;
+        int end = Math.min(size, index + RESTART_INTERVAL);
+        int position = keysStart + getRestartOffset(restart);
+        while (true) {
+            if (currKey == key) {
+                return index;
+            } else if (currKey > key) {
+                return -index - 1;
+            }
+            index++;
+            if (index == end) {
+                return -index - 1;
+            }
+            long delta = readVarLong(bytes, position);
+            position += getVarLongLength(delta);
+            currKey += delta;
+        }
+    }
+
+    public boolean contains(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return the value of this key, or null if the block does not contain the key
+     */
+
+    public T get(long key) {
+        int index = indexOf(key);
+        return index >= 0 ? getValue(index) : null;
+    }
+
+    public List<KeyValue<T>> getKeyValues() {
+        List<KeyValue<T>> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(new KeyValue<>(getKey(i), getValue(i)));
+        }
+        return result;
+    }
+
+    public byte[] toByteArray() {
+        if (offset == 0 && length == bytes.length) {
+            return bytes;
+        }
+        byte[] result = new byte[length];
+        System.arraycopy(bytes, offset, result, 0, length);
+        return result;
+    }
+
+    private long getRestartKey(int restart) {
+        return SerializationUtils.bytesToLong(bytes, offset + HEADER_SIZE + restart * RESTART_SIZE);
+    }
+
+    private int getRestartOffset(int restart) {
+        return SerializationUtils.bytesToInt(bytes, offset + HEADER_SIZE + restart * RESTART_SIZE + 8);
+    }
+
+    /**
+     * Same encoding as {@link ExtendedDataOutputStream#writeVarLong(long)}
+     */
+
+    private static long readVarLong(byte[] bytes, int position) {
+        long result = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = bytes[position++];
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+    }
+
+    private static int getVarLongLength(long value) {
+        return (64 - Long.numberOfLeadingZeros(value | 1) + 6) / 7;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " for block of size " + size);
+        }
+    }
+
+}
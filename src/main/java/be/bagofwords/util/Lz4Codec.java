@@ -0,0 +1,178 @@
+package be.bagofwords.util;
+
+import java.util.Arrays;
+
+/**
+ * Pure java implementation of the LZ4 block format: much faster than deflate, at the cost of a lower compression
+ * ratio. The compressed value is the length of the uncompressed value (4 bytes) followed by a single LZ4 block. The
+ * compressor uses a greedy search with a single hash table, like the fast mode of the reference implementation.
+ */
+
+public class Lz4Codec extends CompressionCodec {
+
+    public static final byte ID = 1;
+
+    private static final int MIN_MATCH = 4;
+    //the last match has to start at least 12 bytes before the end of the block
+    private static final int MF_LIMIT = 12;
+    //the last 5 bytes of a block are always literals
+    private static final int LAST_LITERALS = 5;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_LOG = 12;
+
+    public Lz4Codec() {
+        super(ID);
+    }
+
+    @Override
+    public byte[] compress(byte[] input, int offset, int length) {
+        byte[] output = BufferPool.lease(4 + length + length / 255 + 16);
+        try {
+            return compressInto(input, offset, length, output);
+        } finally {
+            BufferPool.release(output);
+        }
+    }
+
+    private byte[] compressInto(byte[] input, int offset, int length, byte[] output) {
+        SerializationUtils.intToBytes(length, output, 0);
+        int op = 4;
+        int anchor = 0;
+        if (length > MF_LIMIT) {
+            int[] table = new int[1 << HASH_LOG];
+            int matchLimit = length - MF_LIMIT;
+            int pos = 0;
+            while (pos < matchLimit) {
+                int sequence = readInt(input, offset + pos);
+                int hash = hash(sequence);
+                int candidate = table[hash];
+                table[hash] = pos;
+                if (candidate < pos && pos - candidate <= MAX_OFFSET && readInt(input, offset + candidate) == sequence) {
+                    while (pos > anchor && candidate > 0 && input[offset + pos - 1] == input[offset + candidate - 1]) {
+                        pos--;
+                        candidate--;
+                    }
+                    int matchLength = MIN_MATCH;
+                    int maxMatchLength = length - LAST_LITERALS - pos;
+                    while (matchLength < maxMatchLength && input[offset + pos + matchLength] == input[offset + candidate + matchLength]) {
+                        matchLength++;
+                    }
+                    op = writeSequence(input, offset + anchor, pos - anchor, pos - candidate, matchLength, output, op);
+                    pos += matchLength;
+                    anchor = pos;
+                } else {
+                    //skip faster through data that does not compress
+                    pos += 1 + ((pos - anchor) >>> 6);
+                }
+            }
+        }
+        op = writeLastLiterals(input, offset + anchor, length - anchor, output, op);
+        return Arrays.copyOf(output, op);
+    }
+
+    @Override
+    public byte[] uncompress(byte[] input, int offset, int length) {
+        if (length < 4) {
+            throw new RuntimeException("Failed to decompress object, the compressed data is truncated");
+        }
+        int uncompressedLength = SerializationUtils.bytesToInt(input, offset);
+        if (uncompressedLength < 0) {
+            throw new RuntimeException("Failed to decompress object, invalid length " + uncompressedLength);
+        }
+        byte[] output = new byte[uncompressedLength];
+        int ip = offset + 4;
+        int end = offset + length;
+        int op = 0;
+        try {
+            while (ip < end) {
+                int token = input[ip++] & 0xFF;
+                int literalLength = token >>> 4;
+                if (literalLength == 15) {
+                    int b;
+                    do {
+                        b = input[ip++] & 0xFF;
+                        literalLength += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(input, ip, output, op, literalLength);
+                ip += literalLength;
+                op += literalLength;
+                if (ip == end) {
+                    break;
+                }
+                int matchOffset = (input[ip] & 0xFF) | ((input[ip + 1] & 0xFF) << 8);
+                ip += 2;
+                int matchLength = token & 0x0F;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = input[ip++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                if (matchOffset == 0 || matchOffset > op || op + matchLength > output.length) {
+                    throw new RuntimeException("Failed to decompress object, invalid match at position " + op);
+                }
+                copyMatch(output, op - matchOffset, op, matchLength);
+                op += matchLength;
+            }
+        } catch (IndexOutOfBoundsException exp) {
+            throw new RuntimeException("Failed to decompress object, the compressed data is corrupt", exp);
+        }
+        if (op != output.length) {
+            throw new RuntimeException("Failed to decompress object, expected " + output.length + " bytes but found " + op);
+        }
+        return output;
+    }
+
+    static void copyMatch(byte[] output, int from, int to, int length) {
+        if (to - from >= length) {
+            System.arraycopy(output, from, output, to, length);
+        } else {
+            //overlapping copy, repeats the last bytes
+            for (int i = 0; i < length; i++) {
+                output[to + i] = output[from + i];
+            }
+        }
+    }
+
+    static int readInt(byte[] bytes, int position) {
+        return (bytes[position] & 0xFF) | ((bytes[position + 1] & 0xFF) << 8) | ((bytes[position + 2] & 0xFF) << 16) | (bytes[position + 3] << 24);
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int writeSequence(byte[] input, int literalStart, int literalLength, int matchOffset, int matchLength, byte[] output, int op) {
+        int matchLengthCode = matchLength - MIN_MATCH;
+        output[op++] = (byte) ((Math.min(literalLength, 15) << 4) | Math.min(matchLengthCode, 15));
+        op = writeLength(literalLength, output, op);
+        System.arraycopy(input, literalStart, output, op, literalLength);
+        op += literalLength;
+        output[op++] = (byte) matchOffset;
+        output[op++] = (byte) (matchOffset >>> 8);
+        return writeLength(matchLengthCode, output, op);
+    }
+
+    private static int writeLastLiterals(byte[] input, int literalStart, int literalLength, byte[] output, int op) {
+        output[op++] = (byte) (Math.min(literalLength, 15) << 4);
+        op = writeLength(literalLength, output, op);
+        System.arraycopy(input, literalStart, output, op, literalLength);
+        return op + literalLength;
+    }
+
+    private static int writeLength(int length, byte[] output, int op) {
+        if (length >= 15) {
+            length -= 15;
+            while (length >= 255) {
+                output[op++] = (byte) 255;
+                length -= 255;
+            }
+            output[op++] = (byte) length;
+        }
+        return op;
+    }
+
+}
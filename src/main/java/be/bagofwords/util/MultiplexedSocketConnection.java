@@ -0,0 +1,145 @@
+package be.bagofwords.util;
+
+import be.bagofwords.logging.Log;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Client connection that sends requests from many threads over a single socket, without waiting for the responses of
+ * earlier requests. Every request and response is sent as a frame: the request id, a status byte, the length of the
+ * payload and the payload. Responses can arrive in any order and complete the future of their request.
+ * <p>
+ * The server side of the protocol is implemented by {@link MultiplexedSocketHandler}.
+ */
+
+public class MultiplexedSocketConnection implements Closeable {
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERROR = 1;
+
+    private final SocketConnection connection;
+    private final DataOutputStream os;
+    private final AtomicInteger nextRequestId = new AtomicInteger();
+    private final Map<Integer, CompletableFuture<byte[]>> pendingRequests = new ConcurrentHashMap<>();
+    private final ResponseReader responseReader;
+
+    public MultiplexedSocketConnection(String host, int port) throws IOException {
+        this(new SocketConnection(host, port, false, false));
+    }
+
+    /**
+     * @param connection a connection of which the handshake (e.g. selecting a handler) is done. This object takes
+     *                   over all reads and writes of the connection.
+     */
+
+    public MultiplexedSocketConnection(SocketConnection connection) throws IOException {
+        this.connection = connection;
+        connection.ensureBuffered();
+        this.os = connection.getOs();
+        this.responseReader = new ResponseReader(connection.getIs());
+        this.responseReader.start();
+    }
+
+    /**
+     * If the request can not be written, the connection is closed and all pending requests fail
+     */
+
+    public CompletableFuture<byte[]> sendRequest(byte[] request) throws IOException {
+        int requestId = nextRequestId.getAndIncrement();
+        CompletableFuture<byte[]> response = new CompletableFuture<>();
+        pendingRequests.put(requestId, response);
+        try {
+            synchronized (os) {
+                os.writeInt(requestId);
+                os.writeByte(STATUS_OK);
+                os.writeInt(request.length);
+                os.write(request);
+                os.flush();
+            }
+        } catch (IOException exp) {
+            //part of the frame could have been written, so all later frames on this connection would be corrupt
+            org.apache.commons.io.IOUtils.closeQuietly(connection.getSocket());
+            failPendingRequests(exp);
+            throw exp;
+        }
+        if (!connection.isOpen()) {
+            //the response reader could have stopped before we added this request
+            failPendingRequests(new IOException("Connection was closed"));
+        }
+        return response;
+    }
+
+    public <T> CompletableFuture<T> sendRequest(byte[] request, final Class<T> responseClass, final Class... genericParams) throws IOException {
+        return sendRequest(request).thenApply(new Function<byte[], T>() {
+            @Override
+            public T apply(byte[] bytes) {
+                return SerializationUtils.bytesToObjectCheckForNull(bytes, responseClass, genericParams);
+            }
+        });
+    }
+
+    public int getNumOfPendingRequests() {
+        return pendingRequests.size();
+    }
+
+    public boolean isOpen() {
+        return connection.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        connection.getSocket().close();
+        responseReader.waitForFinish();
+    }
+
+    private void failPendingRequests(Exception cause) {
+        for (Integer requestId : pendingRequests.keySet()) {
+            CompletableFuture<byte[]> response = pendingRequests.remove(requestId);
+            if (response != null) {
+                response.completeExceptionally(cause);
+            }
+        }
+    }
+
+    private class ResponseReader extends SafeThread {
+
+        private final DataInputStream is;
+
+        public ResponseReader(DataInputStream is) {
+            super("multiplexed_response_reader", true);
+            this.is = is;
+        }
+
+        @Override
+        protected void runImpl() throws Exception {
+            try {
+                while (true) {
+                    int requestId = is.readInt();
+                    byte status = is.readByte();
+                    byte[] payload = new byte[is.readInt()];
+                    is.readFully(payload);
+                    CompletableFuture<byte[]> response = pendingRequests.remove(requestId);
+                    if (response == null) {
+                        Log.w("Received response for unknown request " + requestId);
+                    } else if (status == STATUS_OK) {
+                        response.complete(payload);
+                    } else {
+                        response.completeExceptionally(new SocketConnection.ReceivedException(new String(payload, StandardCharsets.UTF_8)));
+                    }
+                }
+            } catch (IOException exp) {
+                org.apache.commons.io.IOUtils.closeQuietly(connection.getSocket());
+                failPendingRequests(exp);
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package be.bagofwords.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+
+/**
+ * Server side of {@link MultiplexedSocketConnection}. Requests are handled on the selector thread, or on the given
+ * executor so that slow requests do not delay the other requests of the connection. Responses are sent as soon as
+ * they are ready, not necessarily in the order of the requests.
+ */
+
+public abstract class MultiplexedSocketHandler implements NioSocketHandler {
+
+    private final Executor executor;
+
+    public MultiplexedSocketHandler() {
+        this(null);
+    }
+
+    public MultiplexedSocketHandler(Executor executor) {
+        this.executor = executor;
+    }
+
+    protected abstract byte[] processRequest(byte[] request) throws Exception;
+
+    @Override
+    public final void handleRequest(final NioSocketConnection connection) throws IOException {
+        final int requestId = connection.readRawInt();
+        connection.readRawByte();
+        final byte[] request = connection.readRawBytes(connection.readRawInt());
+        if (executor == null) {
+            process(connection, requestId, request);
+        } else {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    process(connection, requestId, request);
+                    connection.flush();
+                }
+            });
+        }
+    }
+
+    private void process(NioSocketConnection connection, int requestId, byte[] request) {
+        try {
+            connection.writeFrame(requestId, MultiplexedSocketConnection.STATUS_OK, processRequest(request));
+        } catch (Exception exp) {
+            String message = exp.getMessage() == null ? exp.toString() : exp.getMessage();
+            connection.writeFrame(requestId, MultiplexedSocketConnection.STATUS_ERROR, message.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
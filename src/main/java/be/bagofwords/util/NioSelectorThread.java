@@ -0,0 +1,112 @@
+package be.bagofwords.util;
+
+import be.bagofwords.logging.Log;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Thread that handles the events of the channels that were registered with its selector. Channels can only be
+ * registered on the thread itself, other threads submit tasks with {@link #execute(Runnable)}.
+ */
+
+class NioSelectorThread extends SafeThread {
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    NioSelectorThread(String name) throws IOException {
+        super(name, true);
+        this.selector = Selector.open();
+    }
+
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    boolean isSelectorThread() {
+        return Thread.currentThread() == this;
+    }
+
+    void register(final SocketChannel channel, final NioSocketConnection connection) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    connection.setKey(channel.register(selector, SelectionKey.OP_READ, connection));
+                    connection.flush();
+                } catch (ClosedChannelException exp) {
+                    connection.closeImmediately();
+                }
+            }
+        });
+    }
+
+    void register(final ServerSocketChannel channel, final NioSocketServer server) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    channel.register(selector, SelectionKey.OP_ACCEPT, server);
+                } catch (ClosedChannelException exp) {
+                    Log.e("Could not register server channel", exp);
+                }
+            }
+        });
+    }
+
+    int getNumOfChannels() {
+        return selector.keys().size();
+    }
+
+    @Override
+    protected void runImpl() throws Exception {
+        while (!isTerminateRequested()) {
+            selector.select();
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    ((NioSocketServer) key.attachment()).accept();
+                    continue;
+                }
+                NioSocketConnection connection = (NioSocketConnection) key.attachment();
+                if (key.isReadable()) {
+                    connection.handleRead();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.flush();
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void doTerminate() {
+        selector.wakeup();
+    }
+
+    @Override
+    public void cleanUp() {
+        for (SelectionKey key : selector.keys()) {
+            org.apache.commons.io.IOUtils.closeQuietly(key.channel());
+        }
+        org.apache.commons.io.IOUtils.closeQuietly(selector);
+    }
+}
@@ -0,0 +1,50 @@
+package be.bagofwords.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Opens non-blocking connections to a server that speaks the {@link SocketConnection} protocol. All connections are
+ * handled by a few selector threads, responses are passed to the {@link NioSocketHandler} of the connection.
+ */
+
+public class NioSocketClient implements Closeable {
+
+    private final NioSelectorThread[] selectorThreads;
+    private int nextSelectorThread = 0;
+
+    public NioSocketClient(int numOfThreads) throws IOException {
+        this.selectorThreads = new NioSelectorThread[numOfThreads];
+        for (int i = 0; i < numOfThreads; i++) {
+            selectorThreads[i] = new NioSelectorThread("nio_client_" + i);
+            selectorThreads[i].start();
+        }
+    }
+
+    public NioSocketConnection connect(String host, int port, NioSocketHandler handler) throws IOException {
+        return connect(host, port, true, true, handler);
+    }
+
+    public NioSocketConnection connect(String host, int port, boolean autoFlush, boolean autoErrorDetection, NioSocketHandler handler) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        NioSelectorThread selectorThread;
+        synchronized (this) {
+            selectorThread = selectorThreads[nextSelectorThread];
+            nextSelectorThread = (nextSelectorThread + 1) % selectorThreads.length;
+        }
+        NioSocketConnection connection = new NioSocketConnection(channel, selectorThread, handler, autoFlush, autoErrorDetection);
+        selectorThread.register(channel, connection);
+        return connection;
+    }
+
+    @Override
+    public void close() {
+        for (NioSelectorThread selectorThread : selectorThreads) {
+            selectorThread.terminateAndWaitForFinish();
+        }
+    }
+}
@@ -0,0 +1,618 @@
+package be.bagofwords.util;
+
+import be.bagofwords.logging.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Non-blocking connection that speaks the same protocol as {@link SocketConnection}: the autoFlush/autoErrorDetection
+ * handshake, an error flag before every value (if autoErrorDetection is enabled) and length-prefixed (possibly
+ * compressed) values. Connections are created by a {@link NioSocketServer} or a {@link NioSocketClient} and their
+ * data is handled by a {@link NioSocketHandler}.
+ * <p>
+ * The read methods can only be called from the handler. The write methods can be called from any thread: data written
+ * by the handler is sent when the handler returns, data written by other threads is sent when {@link #flush()} is
+ * called.
+ */
+
+public class NioSocketConnection implements Closeable {
+
+    private static final int INITIAL_BUFFER_SIZE = 512;
+    private static final int DEFAULT_MAX_REQUEST_SIZE = 256 * 1024 * 1024;
+    private static final IncompleteRequestException INCOMPLETE_REQUEST = new IncompleteRequestException();
+
+    private final SocketChannel channel;
+    private final NioSelectorThread selectorThread;
+    private final NioSocketHandler handler;
+    private SelectionKey key;
+    private boolean handshakeReceived;
+    private boolean autoFlush;
+    private boolean autoErrorDetection;
+    private ByteBuffer input = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private int readPosition = 0;
+    private int requestStart = 0;
+    private int maxRequestSize = DEFAULT_MAX_REQUEST_SIZE;
+    private ByteBuffer output = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private boolean closeRequested = false;
+    private CompressionCodec compressionCodec = CompressionCodecs.DEFLATE;
+    private Object attachment;
+    private boolean debug;
+
+    /**
+     * Server connections, the settings are read from the handshake
+     */
+
+    NioSocketConnection(SocketChannel channel, NioSelectorThread selectorThread, NioSocketHandler handler) {
+        this.channel = channel;
+        this.selectorThread = selectorThread;
+        this.handler = handler;
+        this.handshakeReceived = false;
+    }
+
+    /**
+     * Client connections, the settings are sent to the server
+     */
+
+    NioSocketConnection(SocketChannel channel, NioSelectorThread selectorThread, NioSocketHandler handler, boolean autoFlush, boolean autoErrorDetection) {
+        this.channel = channel;
+        this.selectorThread = selectorThread;
+        this.handler = handler;
+        this.handshakeReceived = true;
+        this.autoFlush = autoFlush;
+        this.autoErrorDetection = autoErrorDetection;
+        output.put((byte) (autoFlush ? 1 : 0));
+        output.put((byte) (autoErrorDetection ? 1 : 0));
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    public boolean isAutoFlush() {
+        return autoFlush;
+    }
+
+    public boolean isAutoErrorDetection() {
+        return autoErrorDetection;
+    }
+
+    public boolean isDebug() {
+        return debug;
+    }
+
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    public int getMaxRequestSize() {
+        return maxRequestSize;
+    }
+
+    /**
+     * Connections that send larger requests (e.g. because of a corrupt length) are closed, so they can not make us
+     * allocate arbitrarily large buffers. The default is 256 MB.
+     */
+
+    public void setMaxRequestSize(int maxRequestSize) {
+        this.maxRequestSize = maxRequestSize;
+    }
+
+    public CompressionCodec getCompressionCodec() {
+        return compressionCodec;
+    }
+
+    public void setCompressionCodec(CompressionCodec compressionCodec) {
+        this.compressionCodec = compressionCodec;
+    }
+
+    /**
+     * Object to keep the state of the connection between requests, e.g. the handler selected by the first request.
+     */
+
+    public Object getAttachment() {
+        return attachment;
+    }
+
+    public void setAttachment(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    public InetSocketAddress getRemoteAddress() throws IOException {
+        return (InetSocketAddress) channel.getRemoteAddress();
+    }
+
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Closes the connection after all written data was sent
+     */
+
+    public synchronized void close() {
+        closeRequested = true;
+        flush();
+    }
+
+    void closeImmediately() {
+        if (key != null) {
+            key.cancel();
+        }
+        org.apache.commons.io.IOUtils.closeQuietly(channel);
+    }
+
+    /**
+     * Called on the selector thread when data is available
+     */
+
+    synchronized void handleRead() {
+        try {
+            if (!input.hasRemaining()) {
+                growInput(input.capacity());
+            }
+            int numOfBytesRead = channel.read(input);
+            if (numOfBytesRead == -1) {
+                closeImmediately();
+                return;
+            }
+            if (!handshakeReceived) {
+                if (input.position() < 2) {
+                    return;
+                }
+                autoFlush = input.get(0) != 0;
+                autoErrorDetection = input.get(1) != 0;
+                readPosition = 2;
+                handshakeReceived = true;
+            }
+            handleRequests();
+            flush();
+        } catch (IOException | RuntimeException exp) {
+            if (!(exp instanceof IOException) || channel.isOpen()) {
+                Log.e("Error while handling data of connection, closing connection", exp);
+            }
+            closeImmediately();
+        } catch (OutOfMemoryError exp) {
+            //don't let a single connection kill the selector thread of all its connections
+            Log.e("Out of memory while handling data of connection, closing connection", exp);
+            closeImmediately();
+        }
+    }
+
+    private void handleRequests() throws IOException {
+        while (readPosition < input.position() && channel.isOpen()) {
+            requestStart = readPosition;
+            int outputStart = output.position();
+            try {
+                handler.handleRequest(this);
+            } catch (IncompleteRequestException exp) {
+                readPosition = requestStart;
+                //cast to Buffer, ByteBuffer.position(int) and ByteBuffer.flip() do not exist in java 8
+                ((Buffer) output).position(outputStart);
+                break;
+            }
+            if (readPosition == requestStart) {
+                //the handler did not read anything, wait for more data
+                break;
+            }
+        }
+        //move the data of the next request to the start of the buffer
+        ((Buffer) input).flip();
+        ((Buffer) input).position(readPosition);
+        input.compact();
+        readPosition = 0;
+        requestStart = 0;
+    }
+
+    /**
+     * Sends all written data. Can be called from any thread.
+     */
+
+    public synchronized void flush() {
+        if (!channel.isOpen()) {
+            return;
+        }
+        if (!selectorThread.isSelectorThread() || key == null) {
+            selectorThread.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            });
+            return;
+        }
+        if (!key.isValid()) {
+            return;
+        }
+        try {
+            ((Buffer) output).flip();
+            channel.write(output);
+            boolean allWritten = !output.hasRemaining();
+            output.compact();
+            if (allWritten) {
+                key.interestOps(SelectionKey.OP_READ);
+                if (closeRequested) {
+                    closeImmediately();
+                }
+            } else {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        } catch (IOException exp) {
+            closeImmediately();
+        }
+    }
+
+    public int readInt() throws IOException {
+        checksBeforeRead();
+        require(4);
+        int value = input.getInt(readPosition);
+        readPosition += 4;
+        if (debug) {
+            Log.i("RI <-- " + value);
+        }
+        return value;
+    }
+
+    public long readLong() throws IOException {
+        checksBeforeRead();
+        require(8);
+        long value = input.getLong(readPosition);
+        readPosition += 8;
+        if (debug) {
+            Log.i("RI <-- " + value);
+        }
+        return value;
+    }
+
+    public double readDouble() throws IOException {
+        checksBeforeRead();
+        require(8);
+        double value = input.getDouble(readPosition);
+        readPosition += 8;
+        if (debug) {
+            Log.i("RI <-- " + value);
+        }
+        return value;
+    }
+
+    public float readFloat() throws IOException {
+        checksBeforeRead();
+        require(4);
+        float value = input.getFloat(readPosition);
+        readPosition += 4;
+        if (debug) {
+            Log.i("RI <-- " + value);
+        }
+        return value;
+    }
+
+    public byte readByte() throws IOException {
+        checksBeforeRead();
+        require(1);
+        byte value = input.get(readPosition++);
+        if (debug) {
+            Log.i("RI <-- " + value);
+        }
+        return value;
+    }
+
+    public boolean readBoolean() throws IOException {
+        checksBeforeRead();
+        require(1);
+        boolean value = input.get(readPosition++) != 0;
+        if (debug) {
+            Log.i("RI <-- " + value);
+        }
+        return value;
+    }
+
+    public String readString() throws IOException {
+        checksBeforeRead();
+        return readStringImpl();
+    }
+
+    public byte[] readByteArray() throws IOException {
+        checksBeforeRead();
+        require(4);
+        int length = input.getInt(readPosition);
+        require(4 + length);
+        byte[] result = Arrays.copyOfRange(input.array(), readPosition + 4, readPosition + 4 + length);
+        readPosition += 4 + length;
+        return result;
+    }
+
+    public <T> T readValue(Class<T> objectClass, Class... genericParams) throws IOException {
+        checksBeforeRead();
+        int length = SerializationUtils.getWidth(objectClass);
+        boolean isCompressed = false;
+        if (length < 0) {
+            length = readInt();
+            if (length < 0) {
+                isCompressed = true;
+                length = -length;
+            }
+        }
+        require(length);
+        byte[] bytes = input.array();
+        int offset = readPosition;
+        readPosition += length;
+        if (debug) {
+            Log.i("RI <-- " + length + " bytes");
+        }
+        if (isCompressed) {
+            return SerializationUtils.bytesToObjectCheckForNull(IOUtils.uncompressBytes(bytes, offset, length), objectClass, genericParams);
+        } else if (ByteArraySerializable.class.isAssignableFrom(objectClass)) {
+            //the input buffer is reused, so the object needs its own copy
+            return SerializationUtils.bytesToObjectCheckForNull(Arrays.copyOfRange(bytes, offset, offset + length), objectClass, genericParams);
+        } else {
+            return SerializationUtils.bytesToObjectCheckForNull(bytes, offset, length, objectClass, genericParams);
+        }
+    }
+
+    /**
+     * See {@link SocketConnection#writeValues(List, Class)}
+     */
+
+    public synchronized <T> void writeValues(List<T> values, Class<T> objectClass) {
+        byte[] block = SocketConnection.encodeValues(values, objectClass);
+        int length = block.length;
+        if (block.length > 1024 * 1024) {
+            block = IOUtils.compressBytes(block, compressionCodec);
+            length = -block.length;
+        }
+        if (debug) {
+            Log.i("RI --> " + values.size() + " values in " + block.length + " bytes");
+        }
+        actionsBeforeWrite(8 + block.length);
+        output.putInt(values.size());
+        output.putInt(length);
+        output.put(block);
+    }
+
+    public <T> List<T> readValues(Class<T> objectClass, Class... genericParams) throws IOException {
+        checksBeforeRead();
+        require(8);
+        int numOfValues = input.getInt(readPosition);
+        int length = input.getInt(readPosition + 4);
+        boolean isCompressed = length < 0;
+        length = Math.abs(length);
+        require(8 + length);
+        byte[] bytes = input.array();
+        int offset = readPosition + 8;
+        readPosition += 8 + length;
+        if (debug) {
+            Log.i("RI <-- " + numOfValues + " values in " + length + " bytes");
+        }
+        if (isCompressed) {
+            byte[] uncompressed = IOUtils.uncompressBytes(bytes, offset, length);
+            return SocketConnection.decodeValues(uncompressed, 0, uncompressed.length, numOfValues, objectClass, genericParams);
+        } else if (ByteArraySerializable.class.isAssignableFrom(objectClass)) {
+            //the input buffer is reused, so the objects need their own copy
+            return SocketConnection.decodeValues(Arrays.copyOfRange(bytes, offset, offset + length), 0, length, numOfValues, objectClass, genericParams);
+        } else {
+            return SocketConnection.decodeValues(bytes, offset, length, numOfValues, objectClass, genericParams);
+        }
+    }
+
+    public synchronized void writeInt(int value) {
+        actionsBeforeWrite(4);
+        if (debug) {
+            Log.i("RI --> " + value);
+        }
+        output.putInt(value);
+    }
+
+    public synchronized void writeLong(long value) {
+        actionsBeforeWrite(8);
+        if (debug) {
+            Log.i("RI --> " + value);
+        }
+        output.putLong(value);
+    }
+
+    public synchronized void writeDouble(double value) {
+        actionsBeforeWrite(8);
+        if (debug) {
+            Log.i("RI --> " + value);
+        }
+        output.putDouble(value);
+    }
+
+    public synchronized void writeFloat(float value) {
+        actionsBeforeWrite(4);
+        if (debug) {
+            Log.i("RI --> " + value);
+        }
+        output.putFloat(value);
+    }
+
+    public synchronized void writeByte(byte value) {
+        actionsBeforeWrite(1);
+        if (debug) {
+            Log.i("RI --> " + value);
+        }
+        output.put(value);
+    }
+
+    public synchronized void writeBoolean(boolean value) {
+        actionsBeforeWrite(1);
+        if (debug) {
+            Log.i("RI --> " + value);
+        }
+        output.put((byte) (value ? 1 : 0));
+    }
+
+    public synchronized void writeString(String value) {
+        writeByteArray(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public synchronized void writeByteArray(byte[] bytes) {
+        actionsBeforeWrite(4 + bytes.length);
+        writeByteArrayImpl(bytes);
+    }
+
+    public <T> void writeValue(T value) {
+        writeValue(value, (Class<T>) value.getClass());
+    }
+
+    /**
+     * Like {@link SocketConnection#writeValue(Object, Class)}, variable length values are preceded by an error flag
+     * and their length, which is written (with its own error flag) by {@link #writeInt(int)}.
+     */
+
+    public synchronized <T> void writeValue(T value, Class<T> objectClass) {
+        actionsBeforeWrite(0);
+        byte[] objectAsBytes = SerializationUtils.objectToBytesCheckForNull(value, objectClass);
+        if (SerializationUtils.getWidth(objectClass) == -1) {
+            if (objectAsBytes.length > 1024 * 1024) {
+                objectAsBytes = IOUtils.compressBytes(objectAsBytes, compressionCodec);
+                writeInt(-objectAsBytes.length);
+            } else {
+                writeInt(objectAsBytes.length);
+            }
+        }
+        if (debug) {
+            Log.i("RI --> " + objectAsBytes.length + " bytes");
+        }
+        ensureOutputCapacity(objectAsBytes.length);
+        output.put(objectAsBytes);
+    }
+
+    public void writeError(String errorMessage) throws IOException {
+        writeError(errorMessage, null);
+    }
+
+    public synchronized void writeError(String errorMessage, Exception exp) throws IOException {
+        if (!autoErrorDetection) {
+            throw new IOException("Sorry this function is only available if autoErrorDetection is set to true");
+        }
+        if (exp != null) {
+            String[] lines = Utils.getStackTrace(exp).split("\n");
+            for (String line : lines) {
+                errorMessage += "\n\t" + line;
+            }
+        }
+        byte[] bytes = errorMessage.getBytes(StandardCharsets.UTF_8);
+        ensureOutputCapacity(5 + bytes.length);
+        output.put((byte) 1);
+        writeByteArrayImpl(bytes);
+    }
+
+    private void writeByteArrayImpl(byte[] bytes) {
+        if (debug) {
+            String message = new String(bytes, StandardCharsets.UTF_8);
+            Log.i("RI --> " + message.substring(0, Math.min(message.length(), 200)).replaceAll("\\W", "."));
+        }
+        ensureOutputCapacity(4 + bytes.length);
+        output.putInt(bytes.length);
+        output.put(bytes);
+    }
+
+    /**
+     * Reads and writes without error flags, for protocols that are built on top of this connection
+     */
+
+    int readRawInt() {
+        require(4);
+        int value = input.getInt(readPosition);
+        readPosition += 4;
+        return value;
+    }
+
+    byte readRawByte() {
+        require(1);
+        return input.get(readPosition++);
+    }
+
+    byte[] readRawBytes(int length) {
+        require(length);
+        byte[] result = Arrays.copyOfRange(input.array(), readPosition, readPosition + length);
+        readPosition += length;
+        return result;
+    }
+
+    synchronized void writeFrame(int requestId, byte status, byte[] payload) {
+        ensureOutputCapacity(9 + payload.length);
+        output.putInt(requestId);
+        output.put(status);
+        output.putInt(payload.length);
+        output.put(payload);
+    }
+
+    private String readStringImpl() {
+        require(4);
+        int length = input.getInt(readPosition);
+        require(4 + length);
+        String result = new String(input.array(), readPosition + 4, length, StandardCharsets.UTF_8);
+        readPosition += 4 + length;
+        if (debug) {
+            Log.i("RI <-- " + result.substring(0, Math.min(result.length(), 200)).replaceAll("\\W", "."));
+        }
+        return result;
+    }
+
+    private void checksBeforeRead() throws IOException {
+        if (autoErrorDetection) {
+            require(1);
+            boolean hasError = input.get(readPosition++) != 0;
+            if (hasError) {
+                throw new SocketConnection.ReceivedException(readStringImpl());
+            }
+        }
+    }
+
+    private void require(int numOfBytes) {
+        if (numOfBytes < 0 || (long) readPosition - requestStart + numOfBytes > maxRequestSize) {
+            throw new RuntimeException("Request of connection with " + channel.socket().getRemoteSocketAddress() + " is larger than " + maxRequestSize + " bytes, or has a negative length");
+        }
+        if (input.position() - readPosition < numOfBytes) {
+            if (input.capacity() - readPosition < numOfBytes) {
+                //make sure the complete request fits in the buffer
+                growInput(numOfBytes);
+            }
+            throw INCOMPLETE_REQUEST;
+        }
+    }
+
+    private void actionsBeforeWrite(int numOfBytes) {
+        ensureOutputCapacity(1 + numOfBytes);
+        if (autoErrorDetection) {
+            output.put((byte) 0);
+        }
+    }
+
+    private void growInput(int minExtraCapacity) {
+        ByteBuffer newInput = ByteBuffer.allocate(Math.max(input.capacity() * 2, input.capacity() + minExtraCapacity));
+        ((Buffer) input).flip();
+        newInput.put(input);
+        input = newInput;
+    }
+
+    private void ensureOutputCapacity(int numOfBytes) {
+        if (output.remaining() < numOfBytes) {
+            ByteBuffer newOutput = ByteBuffer.allocate(Math.max(output.capacity() * 2, output.position() + numOfBytes));
+            ((Buffer) output).flip();
+            newOutput.put(output);
+            output = newOutput;
+        }
+    }
+
+    /**
+     * Thrown by the read methods when the request has not been received completely. Does not fill in its stack trace,
+     * because it is thrown often and only used to abort the handler.
+     */
+
+    private static class IncompleteRequestException extends RuntimeException {
+        private IncompleteRequestException() {
+            super("Incomplete request", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package be.bagofwords.util;
+
+import java.io.IOException;
+
+/**
+ * Handles the requests of a {@link NioSocketConnection}. Handlers are called on a selector thread, so they should not
+ * block.
+ * <p>
+ * A handler is called when new data has arrived and should read one complete request (or response) and write its
+ * answer. If the request has not completely arrived yet, one of the read methods of the connection will abort the
+ * handler. The handler is called again, from the start of the request, when more data has arrived, and everything
+ * it wrote during the aborted call is discarded. Handlers should therefore not have side effects before they have read
+ * the complete request, and should not catch the runtime exception that is used to abort them.
+ */
+
+public interface NioSocketHandler {
+
+    void handleRequest(NioSocketConnection connection) throws IOException;
+
+}
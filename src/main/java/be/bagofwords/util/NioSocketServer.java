@@ -0,0 +1,100 @@
+package be.bagofwords.util;
+
+import be.bagofwords.logging.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Server that accepts connections of {@link SocketConnection} clients and handles them with a few selector threads,
+ * instead of a thread per connection. Idle connections only cost their (small) buffers, so a server can keep many
+ * thousands of connections open.
+ */
+
+public class NioSocketServer implements Closeable {
+
+    private final int port;
+    private final NioSocketHandler handler;
+    private final NioSelectorThread[] selectorThreads;
+    private ServerSocketChannel serverChannel;
+    private int nextSelectorThread = 0;
+    private volatile int maxRequestSize = -1;
+
+    /**
+     * @param port           the port to listen on, or 0 to use any free port
+     * @param numOfThreads   the number of selector threads that handle the connections
+     */
+
+    public NioSocketServer(int port, int numOfThreads, NioSocketHandler handler) throws IOException {
+        this.port = port;
+        this.handler = handler;
+        this.selectorThreads = new NioSelectorThread[numOfThreads];
+        for (int i = 0; i < numOfThreads; i++) {
+            selectorThreads[i] = new NioSelectorThread("nio_server_" + port + "_" + i);
+        }
+    }
+
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        serverChannel.configureBlocking(false);
+        for (NioSelectorThread selectorThread : selectorThreads) {
+            selectorThread.start();
+        }
+        selectorThreads[0].register(serverChannel, this);
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * See {@link NioSocketConnection#setMaxRequestSize(int)}
+     */
+
+    public void setMaxRequestSize(int maxRequestSize) {
+        this.maxRequestSize = maxRequestSize;
+    }
+
+    public int getNumOfConnections() {
+        int result = -1; //the server channel
+        for (NioSelectorThread selectorThread : selectorThreads) {
+            result += selectorThread.getNumOfChannels();
+        }
+        return result;
+    }
+
+    /**
+     * Called on the first selector thread when a connection can be accepted
+     */
+
+    void accept() {
+        try {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                NioSelectorThread selectorThread = selectorThreads[nextSelectorThread];
+                nextSelectorThread = (nextSelectorThread + 1) % selectorThreads.length;
+                NioSocketConnection connection = new NioSocketConnection(channel, selectorThread, handler);
+                if (maxRequestSize != -1) {
+                    connection.setMaxRequestSize(maxRequestSize);
+                }
+                selectorThread.register(channel, connection);
+            }
+        } catch (IOException exp) {
+            Log.e("Error while accepting connection", exp);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (NioSelectorThread selectorThread : selectorThreads) {
+            selectorThread.terminateAndWaitForFinish();
+        }
+        org.apache.commons.io.IOUtils.closeQuietly(serverChannel);
+    }
+}
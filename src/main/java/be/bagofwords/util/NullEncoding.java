@@ -0,0 +1,41 @@
+package be.bagofwords.util;
+
+/**
+ * How {@link SerializationUtils} and {@link KeyValueBlock} encode null values. Both encodings can be read at any time,
+ * but the encoding is not detected automatically: data stores should persist the version of the encoding they use
+ * (e.g. in a file header) and read their values with the same encoding.
+ */
+
+public enum NullEncoding {
+
+    /**
+     * Null is encoded as a reserved value ({@link SerializationUtils#LONG_NULL}, {@link SerializationUtils#STRING_NULL},
+     * ...), that can then not be used as a real value. This is the original encoding.
+     */
+    SENTINEL((byte) 0),
+
+    /**
+     * Single values are prefixed with a tag byte that indicates whether the value is present, blocks of values have a
+     * bitmap of present values. All values can be encoded.
+     */
+    PRESENCE_TAG((byte) 1);
+
+    private final byte version;
+
+    NullEncoding(byte version) {
+        this.version = version;
+    }
+
+    public byte getVersion() {
+        return version;
+    }
+
+    public static NullEncoding forVersion(byte version) {
+        for (NullEncoding encoding : values()) {
+            if (encoding.version == version) {
+                return encoding;
+            }
+        }
+        throw new RuntimeException("Unknown null encoding version " + version);
+    }
+}
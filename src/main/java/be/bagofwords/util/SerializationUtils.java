@@ -1,14 +1,23 @@
 package be.bagofwords.util;
 
 import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SerializationUtils {
 
@@ -17,10 +26,19 @@ public class SerializationUtils {
     public static final int INT_NULL = Integer.MAX_VALUE;
     public static final float FLOAT_NULL = Float.MAX_VALUE;
     public static final byte[] STRING_NULL;
+    //first byte of values encoded with NullEncoding.PRESENCE_TAG
+    public static final byte ABSENT_TAG = 0;
+    public static final byte PRESENT_TAG = 1;
     private static final Charset CHARSET;
 
     private static final ObjectMapper prettyPrintObjectMapper = new ObjectMapper();
     private static final ObjectMapper defaultObjectMapper = new ObjectMapper();
+    private static final Map<Class, ByteArraySerializableConstructor> byteArraySerializableConstructors = new ConcurrentHashMap<>();
+    //Readers and writers are immutable and thread-safe, and we avoid resolving the (generic) type on every call
+    private static final Map<Class, ObjectReader> readers = new ConcurrentHashMap<>();
+    private static final Map<TypeKey, ObjectReader> genericReaders = new ConcurrentHashMap<>();
+    private static final Map<Class, ObjectWriter> writers = new ConcurrentHashMap<>();
+    private static final Map<Class, ObjectWriter> prettyPrintWriters = new ConcurrentHashMap<>();
 
     static {
         Charset utf8;
@@ -34,9 +52,43 @@ public class SerializationUtils {
         STRING_NULL = "xyNUlLxy".getBytes(CHARSET);
     }
 
-    public static void modifyMapper(MapperModifier mapperModifier) {
+    public static synchronized void modifyMapper(MapperModifier mapperModifier) {
         mapperModifier.modifyMapper(defaultObjectMapper);
         mapperModifier.modifyMapper(prettyPrintObjectMapper);
+        //cached readers and writers keep the configuration of the mapper at the time they were created
+        readers.clear();
+        genericReaders.clear();
+        writers.clear();
+        prettyPrintWriters.clear();
+    }
+
+    /**
+     * Register the Blackbird module, or the Afterburner module on older JVMs, if one of them is on the classpath. These
+     * modules generate bytecode for (de)serializing bean properties instead of using reflection.
+     *
+     * @return true if one of the modules was found and registered
+     */
+
+    public static boolean enableBytecodeAcceleration() {
+        String[] moduleClassNames = {"com.fasterxml.jackson.module.blackbird.BlackbirdModule", "com.fasterxml.jackson.module.afterburner.AfterburnerModule"};
+        for (String moduleClassName : moduleClassNames) {
+            final Module module;
+            try {
+                module = (Module) Class.forName(moduleClassName).newInstance();
+            } catch (ClassNotFoundException | LinkageError e) {
+                continue;
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new RuntimeException("Failed to create " + moduleClassName, e);
+            }
+            modifyMapper(new MapperModifier() {
+                @Override
+                public void modifyMapper(ObjectMapper mapper) {
+                    mapper.registerModule(module);
+                }
+            });
+            return true;
+        }
+        return false;
     }
 
     public static String serializeObject(Object object) {
@@ -48,21 +100,30 @@ public class SerializationUtils {
             if (object instanceof Compactable) {
                 ((Compactable) object).compact();
             }
-            ObjectMapper objectMapper = prettyPrint ? prettyPrintObjectMapper : defaultObjectMapper;
-            return objectMapper.writeValueAsString(object);
+            return getWriter(object, prettyPrint).writeValueAsString(object);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public static <T> T deserializeObject(String object, Class<T> objectClass, Class... genericParams) {
+    /**
+     * Same result as {@link #serializeObject(Object)} encoded in UTF-8, but without creating the intermediate string
+     */
+
+    public static byte[] serializeObjectToBytes(Object object) {
         try {
-            if (genericParams.length > 0) {
-                JavaType type = defaultObjectMapper.getTypeFactory().constructParametricType(objectClass, genericParams);
-                return defaultObjectMapper.readValue(object, type);
-            } else {
-                return defaultObjectMapper.readValue(object, objectClass);
+            if (object instanceof Compactable) {
+                ((Compactable) object).compact();
             }
+            return getWriter(object, false).writeValueAsBytes(object);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static <T> T deserializeObject(String object, Class<T> objectClass, Class... genericParams) {
+        try {
+            return getReader(objectClass, genericParams).readValue(object);
         } catch (IOException e) {
             String objectForMessage = object;
             if (!StringUtils.isEmpty(objectForMessage) && objectForMessage.length() > 200) {
@@ -72,6 +133,18 @@ public class SerializationUtils {
         }
     }
 
+    public static <T> T deserializeObject(byte[] bytes, int offset, int length, Class<T> objectClass, Class... genericParams) {
+        try {
+            return getReader(objectClass, genericParams).readValue(bytes, offset, length);
+        } catch (IOException e) {
+            String objectForMessage = bytesToString(bytes, offset, Math.min(length, 200));
+            if (length > 200) {
+                objectForMessage += "...";
+            }
+            throw new RuntimeException("Failed to read " + objectForMessage, e);
+        }
+    }
+
     public static String bytesToString(byte[] key) {
         return bytesToString(key, 0, key.length);
     }
@@ -102,9 +175,10 @@ public class SerializationUtils {
                 return (T) new Float(Float.intBitsToFloat(bytesToInt(bytes)));
             } else if (objectClass == String.class) {
                 return (T) bytesToString(bytes);
+            } else if (Codecs.isEncoded(bytes, 0, bytes.length)) {
+                return Codecs.decode(bytes, 0, bytes.length, objectClass);
             } else {
-                String objectAsString = bytesToString(bytes);
-                return SerializationUtils.deserializeObject(objectAsString, objectClass);
+                return SerializationUtils.deserializeObject(bytes, 0, bytes.length, objectClass);
             }
         }
     }
@@ -158,14 +232,7 @@ public class SerializationUtils {
             if (value == null) {
                 return STRING_NULL;
             }
-            byte[] result;
-            if (objectClass == String.class) {
-                result = stringToBytes((String) value);
-            } else if (ByteArraySerializable.class.isAssignableFrom(objectClass)) {
-                result = ((ByteArraySerializable) value).toByteArray();
-            } else {
-                result = stringToBytes(SerializationUtils.serializeObject(value, false));
-            }
+            byte[] result = nonNullObjectToBytes(value, objectClass);
             if (Arrays.equals(result, STRING_NULL)) {
                 throw new RuntimeException("Sorry " + value + " is a reserved value to indicate null");
             } else {
@@ -208,33 +275,149 @@ public class SerializationUtils {
                 return null;
             }
         } else if (Enum.class.isAssignableFrom(objectClass)) {
-            byte[] actualValue = Arrays.copyOfRange(value, offset, offset + length);
-            if (Arrays.equals(STRING_NULL, actualValue)) {
+            if (isStringNull(value, offset, length)) {
                 return null;
             }
             Class<? extends Enum> enumClass = (Class) objectClass;
-            String name = bytesToString(actualValue);
+            String name = bytesToString(value, offset, length);
             return (T) Enum.valueOf(enumClass, name);
         } else {
-            byte[] actualValue = Arrays.copyOfRange(value, offset, offset + length);
-            if (Arrays.equals(STRING_NULL, actualValue)) {
+            if (isStringNull(value, offset, length)) {
                 return null;
             } else {
-                if (objectClass == String.class) {
-                    return (T) bytesToString(actualValue);
-                } else if (ByteArraySerializable.class.isAssignableFrom(objectClass)) {
-                    try {
-                        return objectClass.getConstructor(byte[].class).newInstance(actualValue);
-                    } catch (Exception e) {
-                        throw new RuntimeException("Could not instantiate object of class " + objectClass + ". Does it have a constructor with as only argument an array of bytes?", e);
-                    }
-                } else {
-                    return SerializationUtils.deserializeObject(bytesToString(actualValue), objectClass, genericParams);
-                }
+                return bytesToNonNullObject(value, offset, length, objectClass, genericParams);
             }
         }
     }
 
+    public static <T> byte[] objectToBytesCheckForNull(T value, Class<T> objectClass, NullEncoding nullEncoding) {
+        if (nullEncoding == NullEncoding.SENTINEL) {
+            return objectToBytesCheckForNull(value, objectClass);
+        }
+        if (value == null) {
+            return new byte[]{ABSENT_TAG};
+        }
+        byte[] result;
+        int width = getWidth(objectClass);
+        if (width == 8) {
+            result = new byte[9];
+            long valueAsLong = objectClass == Long.class ? (Long) value : Double.doubleToLongBits((Double) value);
+            longToBytes(valueAsLong, result, 1);
+        } else if (width == 4) {
+            result = new byte[5];
+            int valueAsInt = objectClass == Integer.class ? (Integer) value : Float.floatToIntBits((Float) value);
+            intToBytes(valueAsInt, result, 1);
+        } else {
+            byte[] bytes = nonNullObjectToBytes(value, objectClass);
+            result = new byte[bytes.length + 1];
+            System.arraycopy(bytes, 0, result, 1, bytes.length);
+        }
+        result[0] = PRESENT_TAG;
+        return result;
+    }
+
+    public static <T> T bytesToObjectCheckForNull(byte[] value, int offset, int length, Class<T> objectClass, NullEncoding nullEncoding, Class... genericParams) {
+        if (nullEncoding == NullEncoding.SENTINEL) {
+            return bytesToObjectCheckForNull(value, offset, length, objectClass, genericParams);
+        }
+        byte tag = value[offset];
+        if (tag == ABSENT_TAG) {
+            return null;
+        } else if (tag == PRESENT_TAG) {
+            return bytesToNonNullObject(value, offset + 1, length - 1, objectClass, genericParams);
+        } else {
+            throw new RuntimeException("Unexpected tag " + tag + ", this value was not written with a presence tag");
+        }
+    }
+
+    /**
+     * Encoding of values that are not null, without checking for reserved values
+     */
+
+    static <T> byte[] nonNullObjectToBytes(T value, Class<T> objectClass) {
+        if (objectClass == Long.class) {
+            return longToBytes((Long) value);
+        } else if (objectClass == Double.class) {
+            return longToBytes(Double.doubleToLongBits((Double) value));
+        } else if (objectClass == Integer.class) {
+            return intToBytes((Integer) value);
+        } else if (objectClass == Float.class) {
+            return intToBytes(Float.floatToIntBits((Float) value));
+        } else if (Enum.class.isAssignableFrom(objectClass)) {
+            return stringToBytes(((Enum) value).name());
+        } else if (objectClass == String.class) {
+            return stringToBytes((String) value);
+        } else if (ByteArraySerializable.class.isAssignableFrom(objectClass)) {
+            return ((ByteArraySerializable) value).toByteArray();
+        } else {
+            byte[] result = Codecs.encode(value, objectClass);
+            if (result == null) {
+                result = SerializationUtils.serializeObjectToBytes(value);
+            }
+            return result;
+        }
+    }
+
+    static <T> T bytesToNonNullObject(byte[] value, int offset, int length, Class<T> objectClass, Class... genericParams) {
+        if (objectClass == Long.class) {
+            return (T) Long.valueOf(bytesToLong(value, offset));
+        } else if (objectClass == Double.class) {
+            return (T) Double.valueOf(Double.longBitsToDouble(bytesToLong(value, offset)));
+        } else if (objectClass == Integer.class) {
+            return (T) Integer.valueOf(bytesToInt(value, offset));
+        } else if (objectClass == Float.class) {
+            return (T) Float.valueOf(Float.intBitsToFloat(bytesToInt(value, offset)));
+        } else if (Enum.class.isAssignableFrom(objectClass)) {
+            Class<? extends Enum> enumClass = (Class) objectClass;
+            return (T) Enum.valueOf(enumClass, bytesToString(value, offset, length));
+        } else if (objectClass == String.class) {
+            return (T) bytesToString(value, offset, length);
+        } else if (ByteArraySerializable.class.isAssignableFrom(objectClass)) {
+            return createByteArraySerializable(value, offset, length, objectClass);
+        } else if (Codecs.isEncoded(value, offset, length)) {
+            return Codecs.decode(value, offset, length, objectClass);
+        } else {
+            return SerializationUtils.deserializeObject(value, offset, length, objectClass, genericParams);
+        }
+    }
+
+    /**
+     * Compare with STRING_NULL in place, without copying the region
+     */
+
+    private static boolean isStringNull(byte[] value, int offset, int length) {
+        if (length != STRING_NULL.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (value[offset + i] != STRING_NULL[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static <T> T createByteArraySerializable(byte[] value, int offset, int length, Class<T> objectClass) {
+        ByteArraySerializableConstructor constructor = byteArraySerializableConstructors.get(objectClass);
+        if (constructor == null) {
+            constructor = new ByteArraySerializableConstructor(objectClass);
+            byteArraySerializableConstructors.put(objectClass, constructor);
+        }
+        try {
+            if (constructor.withOffsetAndLength != null) {
+                return (T) constructor.withOffsetAndLength.newInstance(value, offset, length);
+            } else if (constructor.withByteBuffer != null) {
+                return (T) constructor.withByteBuffer.newInstance(ByteBuffer.wrap(value, offset, length).slice());
+            } else if (offset == 0 && length == value.length) {
+                return (T) constructor.withByteArray.newInstance(value);
+            } else {
+                return (T) constructor.withByteArray.newInstance(Arrays.copyOfRange(value, offset, offset + length));
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Could not instantiate object of class " + objectClass, e);
+        }
+    }
+
     public static <T> byte[] objectToBytes(T value, Class<T> objectClass) {
         if (objectClass == Long.class) {
             return longToBytes((Long) value);
@@ -247,7 +430,11 @@ public class SerializationUtils {
         } else if (objectClass == String.class) {
             return stringToBytes((String) value);
         } else {
-            return stringToBytes(SerializationUtils.serializeObject(value));
+            byte[] result = Codecs.encode(value, objectClass);
+            if (result == null) {
+                result = SerializationUtils.serializeObjectToBytes(value);
+            }
+            return result;
         }
     }
 
@@ -255,6 +442,10 @@ public class SerializationUtils {
         return IOUtils.compressBytes(objectToBytes(value, objectClass));
     }
 
+    public static <T> byte[] objectToCompressedBytes(T value, Class<T> objectClass, CompressionCodec codec) {
+        return IOUtils.compressBytes(objectToBytes(value, objectClass), codec);
+    }
+
     public static <T> T compressedBytesToObject(byte[] bytes, Class<T> objectClass) {
         return bytesToObject(IOUtils.uncompressBytes(bytes), objectClass);
     }
@@ -345,6 +536,110 @@ public class SerializationUtils {
         return result;
     }
 
+    /**
+     * Methods to read and write values in a ByteBuffer (on-heap, direct or memory-mapped). Values are always written
+     * in big-endian order, compatible with the methods for byte arrays above, whatever the order of the buffer. The
+     * index is absolute, the position of the buffer is not changed.
+     */
+
+    public static void longToBytes(long value, ByteBuffer buffer, int index) {
+        buffer.putLong(index, buffer.order() == ByteOrder.BIG_ENDIAN ? value : Long.reverseBytes(value));
+    }
+
+    public static long bytesToLong(ByteBuffer buffer, int index) {
+        long value = buffer.getLong(index);
+        return buffer.order() == ByteOrder.BIG_ENDIAN ? value : Long.reverseBytes(value);
+    }
+
+    public static void intToBytes(int value, ByteBuffer buffer, int index) {
+        buffer.putInt(index, buffer.order() == ByteOrder.BIG_ENDIAN ? value : Integer.reverseBytes(value));
+    }
+
+    public static int bytesToInt(ByteBuffer buffer, int index) {
+        int value = buffer.getInt(index);
+        return buffer.order() == ByteOrder.BIG_ENDIAN ? value : Integer.reverseBytes(value);
+    }
+
+    public static void doubleToBytes(double value, ByteBuffer buffer, int index) {
+        longToBytes(Double.doubleToLongBits(value), buffer, index);
+    }
+
+    public static double bytesToDouble(ByteBuffer buffer, int index) {
+        return Double.longBitsToDouble(bytesToLong(buffer, index));
+    }
+
+    /**
+     * Bulk methods: the values are copied through a typed view of the buffer, which avoids a call per value
+     */
+
+    public static void longsToBytes(long[] values, ByteBuffer buffer, int index) {
+        bigEndianView(buffer, index).asLongBuffer().put(values);
+    }
+
+    public static void bytesToLongs(ByteBuffer buffer, int index, long[] values) {
+        bigEndianView(buffer, index).asLongBuffer().get(values);
+    }
+
+    public static void intsToBytes(int[] values, ByteBuffer buffer, int index) {
+        bigEndianView(buffer, index).asIntBuffer().put(values);
+    }
+
+    public static void bytesToInts(ByteBuffer buffer, int index, int[] values) {
+        bigEndianView(buffer, index).asIntBuffer().get(values);
+    }
+
+    public static void doublesToBytes(double[] values, ByteBuffer buffer, int index) {
+        bigEndianView(buffer, index).asDoubleBuffer().put(values);
+    }
+
+    public static void bytesToDoubles(ByteBuffer buffer, int index, double[] values) {
+        bigEndianView(buffer, index).asDoubleBuffer().get(values);
+    }
+
+    public static byte[] longsToBytes(long[] values) {
+        byte[] result = new byte[values.length * 8];
+        longsToBytes(values, ByteBuffer.wrap(result), 0);
+        return result;
+    }
+
+    public static long[] bytesToLongs(byte[] bytes, int offset, int numOfValues) {
+        long[] result = new long[numOfValues];
+        bytesToLongs(ByteBuffer.wrap(bytes), offset, result);
+        return result;
+    }
+
+    public static byte[] intsToBytes(int[] values) {
+        byte[] result = new byte[values.length * 4];
+        intsToBytes(values, ByteBuffer.wrap(result), 0);
+        return result;
+    }
+
+    public static int[] bytesToInts(byte[] bytes, int offset, int numOfValues) {
+        int[] result = new int[numOfValues];
+        bytesToInts(ByteBuffer.wrap(bytes), offset, result);
+        return result;
+    }
+
+    public static byte[] doublesToBytes(double[] values) {
+        byte[] result = new byte[values.length * 8];
+        doublesToBytes(values, ByteBuffer.wrap(result), 0);
+        return result;
+    }
+
+    public static double[] bytesToDoubles(byte[] bytes, int offset, int numOfValues) {
+        double[] result = new double[numOfValues];
+        bytesToDoubles(ByteBuffer.wrap(bytes), offset, result);
+        return result;
+    }
+
+    private static ByteBuffer bigEndianView(ByteBuffer buffer, int index) {
+        ByteBuffer view = buffer.duplicate();
+        view.order(ByteOrder.BIG_ENDIAN);
+        //cast to Buffer, ByteBuffer.position(int) does not exist in java 8
+        ((Buffer) view).position(index);
+        return view;
+    }
+
     /**
      * Careful! Not compatible with above method to convert objects to byte arrays!
      */
@@ -354,7 +649,7 @@ public class SerializationUtils {
             if (object instanceof Compactable) {
                 ((Compactable) object).compact();
             }
-            defaultObjectMapper.writeValue(outputStream, object);
+            getWriter(object, false).writeValue(outputStream, object);
         } catch (IOException exp) {
             throw new RuntimeException("Failed to write object to outputstream", exp);
         }
@@ -364,14 +659,47 @@ public class SerializationUtils {
      * Careful! Not compatible with above method to convert objects to byte arrays!
      */
 
-    public static <T> T readObject(Class<T> _class, InputStream inputStream) {
+    public static <T> T readObject(Class<T> _class, InputStream inputStream, Class... genericParams) {
         try {
-            return defaultObjectMapper.readValue(inputStream, _class);
+            return getReader(_class, genericParams).readValue(inputStream);
         } catch (IOException exp) {
             throw new RuntimeException("Failed to read object from inputstream", exp);
         }
     }
 
+    private static ObjectReader getReader(Class objectClass, Class... genericParams) {
+        if (genericParams.length == 0) {
+            ObjectReader reader = readers.get(objectClass);
+            if (reader == null) {
+                reader = defaultObjectMapper.readerFor(objectClass);
+                readers.put(objectClass, reader);
+            }
+            return reader;
+        } else {
+            TypeKey key = new TypeKey(objectClass, genericParams);
+            ObjectReader reader = genericReaders.get(key);
+            if (reader == null) {
+                JavaType type = defaultObjectMapper.getTypeFactory().constructParametricType(objectClass, genericParams);
+                reader = defaultObjectMapper.readerFor(type);
+                genericReaders.put(key, reader);
+            }
+            return reader;
+        }
+    }
+
+    private static ObjectWriter getWriter(Object object, boolean prettyPrint) {
+        //like ObjectMapper.writeValue(), we serialize the runtime class of the object
+        Class objectClass = object == null ? Object.class : object.getClass();
+        Map<Class, ObjectWriter> cache = prettyPrint ? prettyPrintWriters : writers;
+        ObjectWriter writer = cache.get(objectClass);
+        if (writer == null) {
+            ObjectMapper objectMapper = prettyPrint ? prettyPrintObjectMapper : defaultObjectMapper;
+            writer = objectMapper.writerFor(objectClass);
+            cache.put(objectClass, writer);
+        }
+        return writer;
+    }
+
     public static <T> int getWidth(Class<T> objectClass) {
         if (objectClass == Long.class || objectClass == Double.class) {
             return 8;
@@ -385,4 +713,54 @@ public class SerializationUtils {
     public interface MapperModifier {
         void modifyMapper(ObjectMapper mapper);
     }
+
+    private static class TypeKey {
+        private final Class objectClass;
+        private final Class[] genericParams;
+
+        private TypeKey(Class objectClass, Class[] genericParams) {
+            this.objectClass = objectClass;
+            this.genericParams = genericParams;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TypeKey)) return false;
+            TypeKey typeKey = (TypeKey) o;
+            return objectClass == typeKey.objectClass && Arrays.equals(genericParams, typeKey.genericParams);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * objectClass.hashCode() + Arrays.hashCode(genericParams);
+        }
+    }
+
+    /**
+     * Constructors of a ByteArraySerializable class, looked up only once per class
+     */
+
+    private static class ByteArraySerializableConstructor {
+        private final Constructor withOffsetAndLength;
+        private final Constructor withByteBuffer;
+        private final Constructor withByteArray;
+
+        private ByteArraySerializableConstructor(Class objectClass) {
+            withOffsetAndLength = findConstructor(objectClass, byte[].class, int.class, int.class);
+            withByteBuffer = findConstructor(objectClass, ByteBuffer.class);
+            withByteArray = findConstructor(objectClass, byte[].class);
+            if (withOffsetAndLength == null && withByteBuffer == null && withByteArray == null) {
+                throw new RuntimeException("Could not find a constructor for " + objectClass + ". It should have a constructor with as arguments (byte[]), (byte[], int offset, int length) or (ByteBuffer)");
+            }
+        }
+
+        private static Constructor findConstructor(Class objectClass, Class... parameterTypes) {
+            try {
+                return objectClass.getConstructor(parameterTypes);
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+    }
 }
@@ -0,0 +1,193 @@
+package be.bagofwords.util;
+
+import java.util.Arrays;
+
+/**
+ * Pure java implementation of the Snappy raw format: the length of the uncompressed value as a variable-length integer,
+ * followed by literals and copies. The input is compressed in independent fragments of 64 KB, so every copy fits in
+ * the 2-byte offset variant. The decompressor accepts all copy variants of the format.
+ */
+
+public class SnappyCodec extends CompressionCodec {
+
+    public static final byte ID = 2;
+
+    private static final int FRAGMENT_SIZE = 1 << 16;
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_LOG = 14;
+
+    private static final int TAG_LITERAL = 0;
+    private static final int TAG_COPY_1 = 1;
+    private static final int TAG_COPY_2 = 2;
+    private static final int TAG_COPY_4 = 3;
+
+    public SnappyCodec() {
+        super(ID);
+    }
+
+    @Override
+    public byte[] compress(byte[] input, int offset, int length) {
+        byte[] output = BufferPool.lease(32 + length + length / 6);
+        try {
+            int op = writeVarInt(length, output, 0);
+            int[] table = new int[1 << HASH_LOG];
+            for (int fragmentStart = 0; fragmentStart < length; fragmentStart += FRAGMENT_SIZE) {
+                int fragmentLength = Math.min(FRAGMENT_SIZE, length - fragmentStart);
+                op = compressFragment(input, offset + fragmentStart, fragmentLength, table, output, op);
+            }
+            return Arrays.copyOf(output, op);
+        } finally {
+            BufferPool.release(output);
+        }
+    }
+
+    @Override
+    public byte[] uncompress(byte[] input, int offset, int length) {
+        int end = offset + length;
+        int ip = offset;
+        int uncompressedLength = 0;
+        try {
+            for (int shift = 0; ; shift += 7) {
+                if (shift > 28) {
+                    throw new RuntimeException("Failed to decompress object, invalid length");
+                }
+                int b = input[ip++] & 0xFF;
+                uncompressedLength |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+            }
+            if (uncompressedLength < 0) {
+                throw new RuntimeException("Failed to decompress object, invalid length " + uncompressedLength);
+            }
+            byte[] output = new byte[uncompressedLength];
+            int op = 0;
+            while (ip < end) {
+                int tag = input[ip++] & 0xFF;
+                int elementLength;
+                int copyOffset;
+                switch (tag & 3) {
+                    case TAG_LITERAL:
+                        elementLength = tag >>> 2;
+                        if (elementLength >= 60) {
+                            int numOfBytes = elementLength - 59;
+                            elementLength = 0;
+                            for (int i = 0; i < numOfBytes; i++) {
+                                elementLength |= (input[ip++] & 0xFF) << (8 * i);
+                            }
+                        }
+                        elementLength++;
+                        System.arraycopy(input, ip, output, op, elementLength);
+                        ip += elementLength;
+                        op += elementLength;
+                        continue;
+                    case TAG_COPY_1:
+                        elementLength = 4 + ((tag >>> 2) & 7);
+                        copyOffset = ((tag >>> 5) << 8) | (input[ip++] & 0xFF);
+                        break;
+                    case TAG_COPY_2:
+                        elementLength = 1 + (tag >>> 2);
+                        copyOffset = (input[ip] & 0xFF) | ((input[ip + 1] & 0xFF) << 8);
+                        ip += 2;
+                        break;
+                    default:
+                        elementLength = 1 + (tag >>> 2);
+                        copyOffset = Lz4Codec.readInt(input, ip);
+                        ip += 4;
+                        break;
+                }
+                if (copyOffset <= 0 || copyOffset > op || op + elementLength > output.length) {
+                    throw new RuntimeException("Failed to decompress object, invalid copy at position " + op);
+                }
+                Lz4Codec.copyMatch(output, op - copyOffset, op, elementLength);
+                op += elementLength;
+            }
+            if (op != output.length) {
+                throw new RuntimeException("Failed to decompress object, expected " + output.length + " bytes but found " + op);
+            }
+            return output;
+        } catch (IndexOutOfBoundsException exp) {
+            throw new RuntimeException("Failed to decompress object, the compressed data is corrupt", exp);
+        }
+    }
+
+    private static int compressFragment(byte[] input, int start, int length, int[] table, byte[] output, int op) {
+        Arrays.fill(table, -1);
+        int anchor = 0;
+        int pos = 0;
+        int matchLimit = length - MIN_MATCH;
+        while (pos <= matchLimit) {
+            int sequence = Lz4Codec.readInt(input, start + pos);
+            int hash = (sequence * 0x1e35a7bd) >>> (32 - HASH_LOG);
+            int candidate = table[hash];
+            table[hash] = pos;
+            if (candidate >= 0 && Lz4Codec.readInt(input, start + candidate) == sequence) {
+                int matchLength = MIN_MATCH;
+                while (pos + matchLength < length && input[start + pos + matchLength] == input[start + candidate + matchLength]) {
+                    matchLength++;
+                }
+                op = writeLiteral(input, start + anchor, pos - anchor, output, op);
+                op = writeCopy(pos - candidate, matchLength, output, op);
+                pos += matchLength;
+                anchor = pos;
+            } else {
+                pos += 1 + ((pos - anchor) >>> 5);
+            }
+        }
+        return writeLiteral(input, start + anchor, length - anchor, output, op);
+    }
+
+    private static int writeLiteral(byte[] input, int literalStart, int literalLength, byte[] output, int op) {
+        if (literalLength == 0) {
+            return op;
+        }
+        int n = literalLength - 1;
+        if (n < 60) {
+            output[op++] = (byte) (TAG_LITERAL | (n << 2));
+        } else if (n < 256) {
+            output[op++] = (byte) (TAG_LITERAL | (60 << 2));
+            output[op++] = (byte) n;
+        } else {
+            output[op++] = (byte) (TAG_LITERAL | (61 << 2));
+            output[op++] = (byte) n;
+            output[op++] = (byte) (n >>> 8);
+        }
+        System.arraycopy(input, literalStart, output, op, literalLength);
+        return op + literalLength;
+    }
+
+    private static int writeCopy(int copyOffset, int length, byte[] output, int op) {
+        //copies are at most 64 bytes long, and we never leave a remainder that is shorter than 4 bytes
+        while (length >= 68) {
+            op = writeCopyElement(copyOffset, 64, output, op);
+            length -= 64;
+        }
+        if (length > 64) {
+            op = writeCopyElement(copyOffset, 60, output, op);
+            length -= 60;
+        }
+        return writeCopyElement(copyOffset, length, output, op);
+    }
+
+    private static int writeCopyElement(int copyOffset, int length, byte[] output, int op) {
+        if (length < 12 && copyOffset < 2048) {
+            output[op++] = (byte) (TAG_COPY_1 | ((length - 4) << 2) | ((copyOffset >>> 8) << 5));
+            output[op++] = (byte) copyOffset;
+        } else {
+            output[op++] = (byte) (TAG_COPY_2 | ((length - 1) << 2));
+            output[op++] = (byte) copyOffset;
+            output[op++] = (byte) (copyOffset >>> 8);
+        }
+        return op;
+    }
+
+    private static int writeVarInt(int value, byte[] output, int op) {
+        while ((value & ~0x7F) != 0) {
+            output[op++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output[op++] = (byte) value;
+        return op;
+    }
+
+}
@@ -4,7 +4,24 @@ import be.bagofwords.logging.Log;
 
 import java.io.*;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
 
 public class SocketConnection implements Closeable {
 
@@ -17,6 +34,7 @@ public class SocketConnection implements Closeable {
     private boolean sendDataSinceLastFlush = false;
     private boolean outputStreamBuffered = false;
     private boolean inputStreamBuffered = false;
+    private CompressionCodec compressionCodec = CompressionCodecs.DEFLATE;
 
     /**
      * Client connections
@@ -33,7 +51,26 @@ public class SocketConnection implements Closeable {
     }
 
     public SocketConnection(String host, int port, boolean autoFlush, boolean autoErrorDetection) throws IOException {
-        this.socket = new Socket(host, port);
+        this(host, port, autoFlush, autoErrorDetection, false);
+    }
+
+    /**
+     * @param useChannel open the socket through a {@link SocketChannel}, so {@link #sendFile(Path, long, long, boolean)}
+     *                   and {@link #receiveFile(Path)} do not copy the file to user space. On java 8 the streams of such
+     *                   a socket share one lock, so a thread that blocks in a read also blocks all writers. Only use
+     *                   this for connections that do not read and write concurrently.
+     */
+
+    public SocketConnection(String host, int port, boolean autoFlush, boolean autoErrorDetection, boolean useChannel) throws IOException {
+        if (useChannel) {
+            InetSocketAddress address = new InetSocketAddress(host, port);
+            if (address.isUnresolved()) {
+                throw new UnknownHostException(host);
+            }
+            this.socket = SocketChannel.open(address).socket();
+        } else {
+            this.socket = new Socket(host, port);
+        }
         this.is = new DataInputStream(socket.getInputStream());
         this.os = new DataOutputStream(socket.getOutputStream());
         this.autoFlush = autoFlush;
@@ -95,6 +132,19 @@ public class SocketConnection implements Closeable {
         this.debug = debug;
     }
 
+    public CompressionCodec getCompressionCodec() {
+        return compressionCodec;
+    }
+
+    /**
+     * Codec used to compress large values. The receiving side detects the codec from the compressed value, so it does
+     * not need to be configured with the same codec.
+     */
+
+    public void setCompressionCodec(CompressionCodec compressionCodec) {
+        this.compressionCodec = compressionCodec;
+    }
+
     public DataInputStream getIs() {
         return is;
     }
@@ -107,10 +157,44 @@ public class SocketConnection implements Closeable {
         return socket;
     }
 
+    /**
+     * Only detects that this side closed the connection, see {@link #isAlive()} to detect that the other side did
+     */
+
     public boolean isOpen() {
         return !socket.isClosed();
     }
 
+    /**
+     * Checks an idle connection, i.e. a connection with no unread data, by reading from it with a timeout of 1 ms.
+     *
+     * @return false if the connection was closed (on either side) or if unexpected data is waiting to be read
+     */
+
+    public boolean isAlive() {
+        if (socket.isClosed()) {
+            return false;
+        }
+        try {
+            if (is.available() > 0) {
+                return false;
+            }
+            int timeout = socket.getSoTimeout();
+            socket.setSoTimeout(1);
+            try {
+                //the other side closed the connection (-1) or sent data that nobody asked for
+                is.read();
+                return false;
+            } catch (SocketTimeoutException exp) {
+                return true;
+            } finally {
+                socket.setSoTimeout(timeout);
+            }
+        } catch (IOException exp) {
+            return false;
+        }
+    }
+
     public void close() throws IOException {
         checkFlush();
         socket.close();
@@ -241,22 +325,32 @@ public class SocketConnection implements Closeable {
                 length = -length;
             }
         }
-        byte[] objectAsBytes = new byte[length];
-        int numOfBytesRead = is.read(objectAsBytes);
-        while (numOfBytesRead < length) {
-            int extraBytesRead = is.read(objectAsBytes, numOfBytesRead, objectAsBytes.length - numOfBytesRead);
-            if (extraBytesRead == -1) {
-                throw new RuntimeException("Expected to read " + length + " bytes and received " + numOfBytesRead + " bytes");
+        //ByteArraySerializable objects could keep a reference to the buffer, so we can not reuse it
+        boolean pooledBuffer = isCompressed || !ByteArraySerializable.class.isAssignableFrom(objectClass);
+        byte[] objectAsBytes = pooledBuffer ? BufferPool.lease(length) : new byte[length];
+        try {
+            int numOfBytesRead = 0;
+            while (numOfBytesRead < length) {
+                int extraBytesRead = is.read(objectAsBytes, numOfBytesRead, length - numOfBytesRead);
+                if (extraBytesRead == -1) {
+                    throw new RuntimeException("Expected to read " + length + " bytes and received " + numOfBytesRead + " bytes");
+                }
+                numOfBytesRead += extraBytesRead;
+            }
+            if (debug) {
+                Log.i("RI <-- " + length + " bytes");
+            }
+            if (isCompressed) {
+                byte[] uncompressed = IOUtils.uncompressBytes(objectAsBytes, 0, length);
+                return SerializationUtils.bytesToObjectCheckForNull(uncompressed, objectClass, genericParams);
+            } else {
+                return SerializationUtils.bytesToObjectCheckForNull(objectAsBytes, 0, length, objectClass, genericParams);
+            }
+        } finally {
+            if (pooledBuffer) {
+                BufferPool.release(objectAsBytes);
             }
-            numOfBytesRead += extraBytesRead;
-        }
-        if (debug) {
-            Log.i("RI <-- " + objectAsBytes.length + " bytes");
-        }
-        if (isCompressed) {
-            objectAsBytes = IOUtils.uncompressBytes(objectAsBytes);
         }
-        return SerializationUtils.bytesToObjectCheckForNull(objectAsBytes, objectClass, genericParams);
     }
 
     public void flush() throws IOException {
@@ -280,7 +374,7 @@ public class SocketConnection implements Closeable {
             //not a fixed length object
             if (objectAsBytes.length > 1024 * 1024) {
                 //compress large object
-                objectAsBytes = IOUtils.compressBytes(objectAsBytes);
+                objectAsBytes = IOUtils.compressBytes(objectAsBytes, compressionCodec);
                 writeInt(-objectAsBytes.length);
             } else {
                 writeInt(objectAsBytes.length);
@@ -293,6 +387,228 @@ public class SocketConnection implements Closeable {
         actionsAfterWrite();
     }
 
+    /**
+     * Writes all values as one block: a header with the number of values and the length of the block, followed by the
+     * values. Fixed width values are written as a contiguous array, other values are preceded by their length. Large
+     * blocks are compressed. Values can be null.
+     */
+
+    public <T> void writeValues(List<T> values, Class<T> objectClass) throws IOException {
+        actionsBeforeWrite();
+        byte[] block = encodeValues(values, objectClass);
+        int length = block.length;
+        if (block.length > 1024 * 1024) {
+            block = IOUtils.compressBytes(block, compressionCodec);
+            length = -block.length;
+        }
+        if (debug) {
+            Log.i("RI --> " + values.size() + " values in " + block.length + " bytes");
+        }
+        os.writeInt(values.size());
+        os.writeInt(length);
+        os.write(block);
+        actionsAfterWrite();
+    }
+
+    public <T> List<T> readValues(Class<T> objectClass, Class... genericParams) throws IOException {
+        checksBeforeRead();
+        int numOfValues = is.readInt();
+        int length = is.readInt();
+        boolean isCompressed = length < 0;
+        length = Math.abs(length);
+        //ByteArraySerializable objects could keep a reference to the buffer, so we can not reuse it
+        boolean pooledBuffer = isCompressed || !ByteArraySerializable.class.isAssignableFrom(objectClass);
+        byte[] block = pooledBuffer ? BufferPool.lease(length) : new byte[length];
+        try {
+            is.readFully(block, 0, length);
+            if (debug) {
+                Log.i("RI <-- " + numOfValues + " values in " + length + " bytes");
+            }
+            if (isCompressed) {
+                byte[] uncompressed = IOUtils.uncompressBytes(block, 0, length);
+                return decodeValues(uncompressed, 0, uncompressed.length, numOfValues, objectClass, genericParams);
+            } else {
+                return decodeValues(block, 0, length, numOfValues, objectClass, genericParams);
+            }
+        } finally {
+            if (pooledBuffer) {
+                BufferPool.release(block);
+            }
+        }
+    }
+
+    static <T> byte[] encodeValues(List<T> values, Class<T> objectClass) {
+        int width = SerializationUtils.getWidth(objectClass);
+        if (width > 0) {
+            byte[] result = new byte[values.size() * width];
+            for (int i = 0; i < values.size(); i++) {
+                writeFixedWidthValue(values.get(i), objectClass, result, i * width);
+            }
+            return result;
+        } else {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(bos);
+            try {
+                for (T value : values) {
+                    byte[] valueAsBytes = SerializationUtils.objectToBytesCheckForNull(value, objectClass);
+                    dos.writeInt(valueAsBytes.length);
+                    dos.write(valueAsBytes);
+                }
+            } catch (IOException exp) {
+                throw new RuntimeException("Unexpected exception while writing to byte array", exp);
+            }
+            return bos.toByteArray();
+        }
+    }
+
+    /**
+     * Same encoding as {@link SerializationUtils#objectToBytesCheckForNull(Object, Class)}, without an intermediate array
+     */
+
+    private static <T> void writeFixedWidthValue(T value, Class<T> objectClass, byte[] buffer, int offset) {
+        if (objectClass == Long.class) {
+            long valueAsLong = value == null ? SerializationUtils.LONG_NULL : checkNotReserved((Long) value, SerializationUtils.LONG_NULL);
+            SerializationUtils.longToBytes(valueAsLong, buffer, offset);
+        } else if (objectClass == Double.class) {
+            double valueAsDouble = value == null ? SerializationUtils.DOUBLE_NULL : checkNotReserved((Double) value, SerializationUtils.DOUBLE_NULL);
+            SerializationUtils.longToBytes(Double.doubleToLongBits(valueAsDouble), buffer, offset);
+        } else if (objectClass == Integer.class) {
+            int valueAsInt = value == null ? SerializationUtils.INT_NULL : checkNotReserved((Integer) value, SerializationUtils.INT_NULL);
+            SerializationUtils.intToBytes(valueAsInt, buffer, offset);
+        } else {
+            float valueAsFloat = value == null ? SerializationUtils.FLOAT_NULL : checkNotReserved((Float) value, SerializationUtils.FLOAT_NULL);
+            SerializationUtils.intToBytes(Float.floatToIntBits(valueAsFloat), buffer, offset);
+        }
+    }
+
+    private static <T> T checkNotReserved(T value, T reservedValue) {
+        if (value.equals(reservedValue)) {
+            throw new RuntimeException("Sorry " + value + " is a reserved value to indicate null");
+        }
+        return value;
+    }
+
+    static <T> List<T> decodeValues(byte[] block, int offset, int length, int numOfValues, Class<T> objectClass, Class... genericParams) {
+        List<T> result = new ArrayList<>(numOfValues);
+        int width = SerializationUtils.getWidth(objectClass);
+        int position = offset;
+        for (int i = 0; i < numOfValues; i++) {
+            int valueLength = width;
+            if (width <= 0) {
+                valueLength = SerializationUtils.bytesToInt(block, position);
+                position += 4;
+            }
+            if (position + valueLength > offset + length) {
+                throw new RuntimeException("Block of " + numOfValues + " values is truncated at value " + i);
+            }
+            result.add(SerializationUtils.bytesToObjectCheckForNull(block, position, valueLength, objectClass, genericParams));
+            position += valueLength;
+        }
+        return result;
+    }
+
+    public long sendFile(Path file) throws IOException {
+        return sendFile(file, 0, Files.size(file), false);
+    }
+
+    public long sendFile(Path file, long offset, long length) throws IOException {
+        return sendFile(file, offset, length, false);
+    }
+
+    /**
+     * Sends a region of a file, preceded by its length. The data is sent with
+     * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which only avoids copying it to user space if
+     * the socket was created from a channel, i.e. accepted by a {@link java.nio.channels.ServerSocketChannel} or opened
+     * with {@link #SocketConnection(String, int, boolean, boolean, boolean)}. Other sockets send the file through a
+     * buffer on the heap.
+     *
+     * @param checksum send a CRC32 checksum after the data, which is verified by the receiver. Both sides read the
+     *                 complete file once more to compute it.
+     * @return the number of bytes sent
+     */
+
+    public long sendFile(Path file, long offset, long length, boolean checksum) throws IOException {
+        actionsBeforeWrite();
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (offset + length > fileChannel.size()) {
+                throw new IOException("Can not send " + length + " bytes from offset " + offset + " of " + file + ", file has only " + fileChannel.size() + " bytes");
+            }
+            if (debug) {
+                Log.i("RI --> " + length + " bytes of " + file);
+            }
+            os.writeLong(length);
+            os.writeBoolean(checksum);
+            os.flush();
+            WritableByteChannel target = socket.getChannel() != null ? socket.getChannel() : Channels.newChannel(socket.getOutputStream());
+            long sent = 0;
+            while (sent < length) {
+                long transferred = fileChannel.transferTo(offset + sent, length - sent, target);
+                if (transferred == 0) {
+                    throw new EOFException("File " + file + " ended after sending " + sent + " of " + length + " bytes");
+                }
+                sent += transferred;
+            }
+            if (checksum) {
+                os.writeLong(computeChecksum(fileChannel, offset, length));
+            }
+        }
+        actionsAfterWrite();
+        return length;
+    }
+
+    /**
+     * Receives a file that was sent with {@link #sendFile(Path, long, long, boolean)}. The file is created or overwritten.
+     *
+     * @return the number of bytes received
+     */
+
+    public long receiveFile(Path file) throws IOException {
+        checksBeforeRead();
+        long length = is.readLong();
+        boolean hasChecksum = is.readBoolean();
+        if (debug) {
+            Log.i("RI <-- " + length + " bytes to " + file);
+        }
+        //buffered bytes can only be read through the input stream
+        ReadableByteChannel source = socket.getChannel() != null && !inputStreamBuffered ? socket.getChannel() : Channels.newChannel(is);
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ)) {
+            long received = 0;
+            while (received < length) {
+                long transferred = fileChannel.transferFrom(source, received, length - received);
+                if (transferred == 0) {
+                    throw new EOFException("Expected to read " + length + " bytes and received " + received + " bytes");
+                }
+                received += transferred;
+            }
+            if (hasChecksum && is.readLong() != computeChecksum(fileChannel, 0, length)) {
+                throw new IOException("Checksum of received file " + file + " does not match");
+            }
+        }
+        return length;
+    }
+
+    private static long computeChecksum(FileChannel fileChannel, long offset, long length) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        long position = offset;
+        long end = offset + length;
+        while (position < end) {
+            //cast to Buffer, the ByteBuffer methods do not exist in java 8
+            ((Buffer) buffer).clear();
+            if (end - position < buffer.capacity()) {
+                ((Buffer) buffer).limit((int) (end - position));
+            }
+            int numOfBytesRead = fileChannel.read(buffer, position);
+            if (numOfBytesRead == -1) {
+                throw new EOFException("File ended before position " + end);
+            }
+            ((Buffer) buffer).flip();
+            crc.update(buffer);
+            position += numOfBytesRead;
+        }
+        return crc.getValue();
+    }
+
     public byte[] readByteArray() throws IOException {
         return readByteArrayImpl(true);
     }
@@ -329,7 +645,21 @@ public class SocketConnection implements Closeable {
     }
 
     private String readStringImpl(boolean doChecksBeforeRead) throws IOException {
-        return new String(readByteArrayImpl(doChecksBeforeRead), "UTF-8");
+        if (doChecksBeforeRead) {
+            checksBeforeRead();
+        }
+        int length = is.readInt();
+        byte[] bytes = BufferPool.lease(length);
+        try {
+            is.readFully(bytes, 0, length);
+            String result = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            if (debug) {
+                Log.i("RI <-- " + result.substring(0, Math.min(result.length(), 200)).replaceAll("\\W", "."));
+            }
+            return result;
+        } finally {
+            BufferPool.release(bytes);
+        }
     }
 
     public void writeByteArray(byte[] bytes) throws IOException {
@@ -0,0 +1,434 @@
+package be.bagofwords.util;
+
+import be.bagofwords.logging.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of client connections, grouped by host, port and handler, so short remote calls do not need to set up a new
+ * connection and repeat the handshake.
+ * <p>
+ * Connections are returned with {@link #returnConnection(SocketConnection)}, and should only be returned when all
+ * responses of the last request were read. Connections that are left in an unknown state (e.g. after an exception
+ * halfway through a request) should be discarded with {@link #invalidate(SocketConnection)}.
+ * <p>
+ * A background thread closes connections that have been idle for longer than maxIdleTime (while keeping at least
+ * minSize connections per host, port and handler), and opens connections until there are minSize again.
+ * <p>
+ * A connection that was idle for longer than the validation idle time is checked with {@link SocketConnection#isAlive()}
+ * before it is borrowed, so connections that were closed by the server (e.g. after a restart or an idle timeout) are
+ * discarded. Connections that were used more recently are not checked, to not delay every borrow. A call that fails on
+ * such a connection should invalidate it.
+ */
+
+public class SocketConnectionPool implements Closeable {
+
+    public static final long DEFAULT_VALIDATION_IDLE_TIME = 1000;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long maxIdleTime;
+    private final long maxWaitTime;
+    private volatile long validationIdleTime = DEFAULT_VALIDATION_IDLE_TIME;
+    private final Map<PoolKey, Pool> pools = new ConcurrentHashMap<>();
+    private final Map<SocketConnection, Pool> borrowedConnections = new ConcurrentHashMap<>();
+    private final EvictionThread evictionThread;
+    private volatile boolean closed = false;
+
+    private final AtomicLong numOfBorrows = new AtomicLong();
+    private final AtomicLong numOfConnectionsCreated = new AtomicLong();
+    private final AtomicLong numOfExhaustions = new AtomicLong();
+    private final AtomicLong numOfTimeouts = new AtomicLong();
+    private final AtomicLong totalWaitTime = new AtomicLong();
+    private final AtomicLong maxMeasuredWaitTime = new AtomicLong();
+
+    /**
+     * @param minSize     minimum number of connections per host, port and handler
+     * @param maxSize     maximum number of connections per host, port and handler
+     * @param maxIdleTime time (in ms) after which idle connections are closed
+     * @param maxWaitTime maximum time (in ms) to wait for a connection when all connections are borrowed
+     */
+
+    public SocketConnectionPool(int minSize, int maxSize, long maxIdleTime, long maxWaitTime) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new RuntimeException("Invalid pool sizes " + minSize + " and " + maxSize);
+        }
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.maxIdleTime = maxIdleTime;
+        this.maxWaitTime = maxWaitTime;
+        this.evictionThread = new EvictionThread();
+        this.evictionThread.start();
+    }
+
+    public SocketConnection borrow(String host, int port) throws IOException {
+        return borrow(host, port, null);
+    }
+
+    /**
+     * @param handler the handler name that is sent after the handshake, or null to not send a handler name
+     */
+
+    public SocketConnection borrow(String host, int port, String handler) throws IOException {
+        if (closed) {
+            throw new IOException("Connection pool was closed");
+        }
+        Pool pool = getPool(new PoolKey(host, port, handler));
+        long start = System.nanoTime();
+        SocketConnection connection = pool.borrow(start + maxWaitTime * 1000000);
+        long waitTime = System.nanoTime() - start;
+        numOfBorrows.incrementAndGet();
+        totalWaitTime.addAndGet(waitTime);
+        long currentMax;
+        while (waitTime > (currentMax = maxMeasuredWaitTime.get()) && !maxMeasuredWaitTime.compareAndSet(currentMax, waitTime)) {
+            //retry
+        }
+        borrowedConnections.put(connection, pool);
+        return connection;
+    }
+
+    public long getValidationIdleTime() {
+        return validationIdleTime;
+    }
+
+    /**
+     * @param validationIdleTime connections that were idle for longer than this time (in ms) are checked before they are
+     *                           borrowed, 0 to check all connections
+     */
+
+    public void setValidationIdleTime(long validationIdleTime) {
+        this.validationIdleTime = validationIdleTime;
+    }
+
+    public void returnConnection(SocketConnection connection) {
+        Pool pool = removeBorrowed(connection);
+        if (closed || !connection.isOpen()) {
+            pool.discard(connection);
+            return;
+        }
+        try {
+            connection.flush();
+            pool.returnConnection(connection);
+        } catch (IOException exp) {
+            pool.discard(connection);
+        }
+    }
+
+    public void invalidate(SocketConnection connection) {
+        removeBorrowed(connection).discard(connection);
+    }
+
+    /**
+     * Closes the connections that have been idle for too long, and opens connections for the pools that have fewer
+     * than minSize connections. Called periodically by a background thread.
+     */
+
+    public void evictIdleConnections() {
+        long now = System.currentTimeMillis();
+        for (Pool pool : pools.values()) {
+            pool.evict(now - maxIdleTime);
+            pool.fillToMinSize();
+        }
+    }
+
+    public int getNumOfIdleConnections() {
+        int result = 0;
+        for (Pool pool : pools.values()) {
+            synchronized (pool) {
+                result += pool.idleConnections.size();
+            }
+        }
+        return result;
+    }
+
+    public int getNumOfBorrowedConnections() {
+        return borrowedConnections.size();
+    }
+
+    public long getNumOfBorrows() {
+        return numOfBorrows.get();
+    }
+
+    public long getNumOfConnectionsCreated() {
+        return numOfConnectionsCreated.get();
+    }
+
+    /**
+     * @return the number of times a borrow had to wait because maxSize connections were borrowed
+     */
+
+    public long getNumOfExhaustions() {
+        return numOfExhaustions.get();
+    }
+
+    /**
+     * @return the number of times a borrow failed because no connection became available within maxWaitTime
+     */
+
+    public long getNumOfTimeouts() {
+        return numOfTimeouts.get();
+    }
+
+    /**
+     * @return the average time (in ms) that a borrow took, including the time to create new connections
+     */
+
+    public double getAverageWaitTime() {
+        long borrows = numOfBorrows.get();
+        return borrows == 0 ? 0 : totalWaitTime.get() / 1e6 / borrows;
+    }
+
+    public double getMaxWaitTime() {
+        return maxMeasuredWaitTime.get() / 1e6;
+    }
+
+    /**
+     * Closes all idle connections. Borrowed connections are closed when they are returned.
+     */
+
+    @Override
+    public void close() {
+        closed = true;
+        evictionThread.terminateAndWaitForFinish();
+        for (Pool pool : pools.values()) {
+            pool.closeIdleConnections();
+        }
+    }
+
+    private Pool getPool(PoolKey key) {
+        Pool pool = pools.get(key);
+        if (pool == null) {
+            pools.putIfAbsent(key, new Pool(key));
+            pool = pools.get(key);
+        }
+        return pool;
+    }
+
+    private Pool removeBorrowed(SocketConnection connection) {
+        Pool pool = borrowedConnections.remove(connection);
+        if (pool == null) {
+            throw new RuntimeException("Connection was not borrowed from this pool or was already returned");
+        }
+        return pool;
+    }
+
+    private SocketConnection createConnection(PoolKey key) throws IOException {
+        SocketConnection connection;
+        if (key.handler == null) {
+            connection = new SocketConnection(key.host, key.port);
+        } else {
+            connection = new SocketConnection(key.host, key.port, key.handler);
+        }
+        numOfConnectionsCreated.incrementAndGet();
+        return connection;
+    }
+
+    private static void closeQuietly(SocketConnection connection) {
+        try {
+            connection.close();
+        } catch (IOException exp) {
+            //connection was probably already closed by the server
+        }
+    }
+
+    private class Pool {
+
+        private final PoolKey key;
+        //most recently returned connections are at the end
+        private final Deque<IdleConnection> idleConnections = new ArrayDeque<>();
+        private int numOfConnections = 0;
+
+        private Pool(PoolKey key) {
+            this.key = key;
+        }
+
+        private SocketConnection borrow(long deadline) throws IOException {
+            while (true) {
+                IdleConnection idleConnection = takeIdleConnection(deadline);
+                if (idleConnection == null) {
+                    return createReservedConnection();
+                }
+                //checked outside of the lock, isAlive() can take a millisecond
+                if (isUsable(idleConnection)) {
+                    return idleConnection.connection;
+                }
+                discard(idleConnection.connection);
+            }
+        }
+
+        private boolean isUsable(IdleConnection idleConnection) {
+            SocketConnection connection = idleConnection.connection;
+            if (!connection.isOpen()) {
+                return false;
+            }
+            return System.currentTimeMillis() - idleConnection.lastUsed < validationIdleTime || connection.isAlive();
+        }
+
+        /**
+         * @return the most recently used idle connection, or null if a new connection can be created
+         */
+
+        private IdleConnection takeIdleConnection(long deadline) throws IOException {
+            synchronized (this) {
+                boolean exhausted = false;
+                while (true) {
+                    if (!idleConnections.isEmpty()) {
+                        return idleConnections.pollLast();
+                    }
+                    if (numOfConnections < maxSize) {
+                        numOfConnections++;
+                        return null;
+                    }
+                    if (!exhausted) {
+                        exhausted = true;
+                        numOfExhaustions.incrementAndGet();
+                    }
+                    long timeToWait = (deadline - System.nanoTime()) / 1000000;
+                    if (timeToWait <= 0) {
+                        numOfTimeouts.incrementAndGet();
+                        throw new IOException("Timeout while waiting for a connection to " + key + ", all " + maxSize + " connections are in use");
+                    }
+                    try {
+                        wait(timeToWait);
+                    } catch (InterruptedException exp) {
+                        throw new IOException("Interrupted while waiting for a connection to " + key);
+                    }
+                }
+            }
+        }
+
+        private SocketConnection createReservedConnection() throws IOException {
+            try {
+                return createConnection(key);
+            } catch (IOException | RuntimeException exp) {
+                synchronized (this) {
+                    numOfConnections--;
+                    notify();
+                }
+                throw exp;
+            }
+        }
+
+        private synchronized void returnConnection(SocketConnection connection) {
+            idleConnections.addLast(new IdleConnection(connection, System.currentTimeMillis()));
+            notify();
+        }
+
+        private void discard(SocketConnection connection) {
+            closeQuietly(connection);
+            synchronized (this) {
+                numOfConnections--;
+                notify();
+            }
+        }
+
+        private void evict(long minLastUsed) {
+            List<SocketConnection> toClose = new ArrayList<>();
+            synchronized (this) {
+                while (!idleConnections.isEmpty() && numOfConnections > minSize && idleConnections.peekFirst().lastUsed < minLastUsed) {
+                    toClose.add(idleConnections.pollFirst().connection);
+                    numOfConnections--;
+                }
+            }
+            for (SocketConnection connection : toClose) {
+                closeQuietly(connection);
+            }
+        }
+
+        private void fillToMinSize() {
+            while (!closed) {
+                synchronized (this) {
+                    if (numOfConnections >= minSize) {
+                        return;
+                    }
+                    numOfConnections++;
+                }
+                try {
+                    returnConnection(createReservedConnection());
+                } catch (IOException exp) {
+                    Log.w("Could not open connection to " + key, exp);
+                    return;
+                }
+            }
+        }
+
+        private void closeIdleConnections() {
+            List<IdleConnection> toClose;
+            synchronized (this) {
+                toClose = new ArrayList<>(idleConnections);
+                numOfConnections -= idleConnections.size();
+                idleConnections.clear();
+            }
+            for (IdleConnection idleConnection : toClose) {
+                closeQuietly(idleConnection.connection);
+            }
+        }
+    }
+
+    private static class IdleConnection {
+        private final SocketConnection connection;
+        private final long lastUsed;
+
+        private IdleConnection(SocketConnection connection, long lastUsed) {
+            this.connection = connection;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    private static class PoolKey {
+        private final String host;
+        private final int port;
+        private final String handler;
+
+        private PoolKey(String host, int port, String handler) {
+            this.host = host;
+            this.port = port;
+            this.handler = handler;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PoolKey poolKey = (PoolKey) o;
+            return port == poolKey.port && host.equals(poolKey.host) && Objects.equals(handler, poolKey.handler);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(host, port, handler);
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port + (handler == null ? "" : "/" + handler);
+        }
+    }
+
+    private class EvictionThread extends SafeThread {
+
+        public EvictionThread() {
+            super("socket_connection_pool_eviction", true);
+        }
+
+        @Override
+        protected void runImpl() throws Exception {
+            long interval = Math.max(10, Math.min(maxIdleTime / 2, 10000));
+            while (!isTerminateRequested()) {
+                Utils.threadSleep(interval);
+                if (!isTerminateRequested()) {
+                    evictIdleConnections();
+                }
+            }
+        }
+    }
+}
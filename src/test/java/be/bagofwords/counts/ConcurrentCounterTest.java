@@ -0,0 +1,85 @@
+package be.bagofwords.counts;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConcurrentCounterTest {
+
+    @Test
+    public void testConcurrentIncrements() throws InterruptedException {
+        final ConcurrentCounter<String> counter = new ConcurrentCounter<>();
+        final int numOfThreads = 8;
+        final int numOfIncrements = 100000;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numOfThreads; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < numOfIncrements; j++) {
+                        counter.inc("key" + (j % 10));
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(numOfThreads * numOfIncrements, counter.getTotal());
+        Assert.assertEquals(10, counter.size());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(numOfThreads * numOfIncrements / 10, counter.get("key" + i));
+        }
+    }
+
+    @Test
+    public void testTotalWithConcurrentRemovals() throws InterruptedException {
+        final ConcurrentCounter<Integer> counter = new ConcurrentCounter<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 200000; j++) {
+                        counter.inc(j % 100);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (int i = 0; i < 200; i++) {
+            counter.trim(50);
+            counter.remove(i % 100);
+            if (i % 50 == 0) {
+                counter.clear();
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long sum = 0;
+        for (Integer key : counter.keySet()) {
+            sum += counter.get(key);
+        }
+        Assert.assertEquals(sum, counter.getTotal());
+    }
+
+    @Test
+    public void testTrim() {
+        ConcurrentCounter<Integer> counter = new ConcurrentCounter<>();
+        for (int i = 1; i <= 10; i++) {
+            counter.inc(i, i);
+        }
+        counter.trim(3);
+        Assert.assertEquals(3, counter.size());
+        Assert.assertEquals(10, (int) counter.sortedKeys().get(0));
+        Assert.assertEquals(0, counter.get(7));
+        Assert.assertEquals(27, counter.getTotal());
+    }
+
+}
@@ -0,0 +1,81 @@
+package be.bagofwords.counts;
+
+import be.bagofwords.util.HashUtils;
+import be.bagofwords.util.SerializationUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CountMinSketchTest {
+
+    @Test
+    public void testEstimatesAreWithinBounds() {
+        double epsilon = 0.001;
+        CountMinSketch sketch = new CountMinSketch(epsilon, 0.01);
+        Counter<Long> exactCounts = new Counter<>();
+        for (int i = 0; i < 100000; i++) {
+            long key = HashUtils.hashCode("word" + (i % 5000) * (i % 7));
+            sketch.inc(key);
+            exactCounts.inc(key);
+        }
+        Assert.assertEquals(100000, sketch.getTotal());
+        int numOfLargeErrors = 0;
+        for (Long key : exactCounts.keySet()) {
+            long estimate = sketch.get(key);
+            Assert.assertTrue(estimate >= exactCounts.get(key));
+            if (estimate - exactCounts.get(key) > epsilon * sketch.getTotal()) {
+                numOfLargeErrors++;
+            }
+        }
+        Assert.assertTrue(numOfLargeErrors <= exactCounts.size() * 0.01);
+    }
+
+    @Test
+    public void testMergeAndSerialization() {
+        CountMinSketch first = new CountMinSketch(0.01, 0.01);
+        CountMinSketch second = new CountMinSketch(0.01, 0.01);
+        first.inc(1, 10);
+        second.inc(1, 5);
+        second.inc(2, 3);
+        first.addAll(second);
+        Assert.assertEquals(15, first.get(1));
+        Assert.assertEquals(18, first.getTotal());
+        byte[] bytes = SerializationUtils.objectToBytesCheckForNull(first, CountMinSketch.class);
+        CountMinSketch deserialized = SerializationUtils.bytesToObjectCheckForNull(bytes, CountMinSketch.class);
+        Assert.assertEquals(15, deserialized.get(1));
+        Assert.assertEquals(3, deserialized.get(2));
+        Assert.assertEquals(18, deserialized.getTotal());
+    }
+
+    @Test
+    public void testIncorrectParameters() {
+        double[][] parameters = {{1.5, 0.01}, {0.01, 0}, {Double.NaN, 0.01}, {1e-12, 0.01}};
+        for (double[] parameter : parameters) {
+            try {
+                new CountMinSketch(parameter[0], parameter[1]);
+                Assert.fail("Epsilon " + parameter[0] + " and delta " + parameter[1] + " should not be accepted");
+            } catch (RuntimeException exp) {
+                //expected
+            }
+        }
+    }
+
+    @Test
+    public void testCorruptHeader() {
+        byte[] bytes = new CountMinSketch(0.01, 0.01).toByteArray();
+        //a huge width should be rejected before the table is allocated
+        SerializationUtils.intToBytes(Integer.MAX_VALUE / 2, bytes, 4);
+        try {
+            new CountMinSketch(bytes);
+            Assert.fail("Corrupt header should not be accepted");
+        } catch (RuntimeException exp) {
+            //expected
+        }
+        try {
+            new CountMinSketch(new byte[4]);
+            Assert.fail("Truncated header should not be accepted");
+        } catch (RuntimeException exp) {
+            //expected
+        }
+    }
+
+}
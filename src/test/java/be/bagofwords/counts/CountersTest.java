@@ -0,0 +1,42 @@
+package be.bagofwords.counts;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CountersTest {
+
+    @Test
+    public void testMergeAll() {
+        List<Counter<Integer>> counters = createCounters();
+        Counter<Integer> expected = Counters.mergeAllSequentially(counters);
+        Counter<Integer> merged = Counters.mergeAll(counters);
+        Assert.assertEquals(expected.size(), merged.size());
+        Assert.assertEquals(expected.getTotal(), merged.getTotal());
+        for (Integer key : expected.keySet()) {
+            Assert.assertEquals(expected.get(key), merged.get(key));
+        }
+    }
+
+    @Test
+    public void testMergeAllWithTrimming() {
+        Counter<Integer> merged = Counters.mergeAll(createCounters(), 10);
+        Assert.assertEquals(10, merged.size());
+        Assert.assertEquals(0, (int) merged.sortedKeys().get(0));
+    }
+
+    private List<Counter<Integer>> createCounters() {
+        List<Counter<Integer>> counters = new ArrayList<>();
+        for (int i = 0; i < 13; i++) {
+            Counter<Integer> counter = new Counter<>();
+            for (int j = 0; j < 1000; j++) {
+                counter.inc(j % (100 + i), 1000 - j);
+            }
+            counters.add(counter);
+        }
+        return counters;
+    }
+
+}
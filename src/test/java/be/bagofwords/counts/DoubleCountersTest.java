@@ -0,0 +1,66 @@
+package be.bagofwords.counts;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class DoubleCountersTest {
+
+    @Test
+    public void testCompensatedTotal() {
+        LongDoubleCounter counter = new LongDoubleCounter();
+        counter.inc(1, 1e16);
+        for (int i = 0; i < 1000; i++) {
+            counter.inc(i + 2, 1.0);
+        }
+        Assert.assertEquals(1e16 + 1000, counter.getTotal(), 0.0);
+        Assert.assertEquals(1001, counter.size());
+        Assert.assertEquals(1.0, counter.get(500), 0.0);
+        counter.trim(1);
+        Assert.assertEquals(1e16, counter.getTotal(), 0.0);
+        Assert.assertArrayEquals(new long[]{1}, counter.sortedKeys());
+    }
+
+    @Test
+    public void testObjectKeys() {
+        ObjectDoubleCounter<String> counter = new ObjectDoubleCounter<>();
+        for (int i = 0; i < 100; i++) {
+            counter.inc("key" + (i % 10), 0.1 * (i % 10));
+        }
+        Assert.assertEquals(10, counter.size());
+        Assert.assertEquals(9.0, counter.get("key9"), 0.00001);
+        Assert.assertEquals(0.0, counter.get("other"), 0.0);
+        Assert.assertEquals(45.0, counter.getTotal(), 0.00001);
+        List<String> sortedKeys = counter.sortedKeys();
+        Assert.assertEquals("key9", sortedKeys.get(0));
+        Assert.assertEquals("key0", sortedKeys.get(9));
+        counter.trim(3);
+        Assert.assertEquals(3, counter.size());
+        Assert.assertEquals(24.0, counter.getTotal(), 0.00001);
+    }
+
+    @Test
+    public void testSetOverLargeValue() {
+        LongDoubleCounter longCounter = new LongDoubleCounter();
+        longCounter.inc(1, 1e16);
+        longCounter.inc(0, 1e16);
+        longCounter.inc(2, 3.0);
+        longCounter.set(1, 1.0);
+        longCounter.set(0, 2.0);
+        longCounter.set(5, 4.0);
+        Assert.assertEquals(1.0, longCounter.get(1), 0.0);
+        Assert.assertEquals(2.0, longCounter.get(0), 0.0);
+        Assert.assertEquals(4.0, longCounter.get(5), 0.0);
+        Assert.assertEquals(10.0, longCounter.getTotal(), 0.0);
+        ObjectDoubleCounter<String> objectCounter = new ObjectDoubleCounter<>();
+        objectCounter.inc("a", 1e16);
+        objectCounter.inc("b", 3.0);
+        objectCounter.set("a", 1.0);
+        objectCounter.set("c", 4.0);
+        Assert.assertEquals(1.0, objectCounter.get("a"), 0.0);
+        Assert.assertEquals(4.0, objectCounter.get("c"), 0.0);
+        Assert.assertEquals(8.0, objectCounter.getTotal(), 0.0);
+    }
+
+}
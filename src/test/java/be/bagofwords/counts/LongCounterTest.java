@@ -0,0 +1,69 @@
+package be.bagofwords.counts;
+
+import be.bagofwords.util.HashUtils;
+import be.bagofwords.util.SerializationUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class LongCounterTest {
+
+    @Test
+    public void testIncAndGet() {
+        LongCounter counter = new LongCounter();
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            long key = HashUtils.hashCode("word" + random.nextInt(5000));
+            counter.inc(key);
+            Long curr = expected.get(key);
+            expected.put(key, curr == null ? 1 : curr + 1);
+        }
+        counter.inc(0, 3);
+        expected.put(0l, 3l);
+        Assert.assertEquals(expected.size(), counter.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            Assert.assertEquals((long) entry.getValue(), counter.get(entry.getKey()));
+        }
+        Assert.assertEquals(100003, counter.getTotal());
+        Assert.assertEquals(0, counter.get(12345));
+    }
+
+    @Test
+    public void testSortedKeysAndTrim() {
+        LongCounter counter = new LongCounter();
+        for (int i = 0; i < 100; i++) {
+            counter.inc(i, i);
+        }
+        long[] sortedKeys = counter.sortedKeys();
+        Assert.assertEquals(100, sortedKeys.length);
+        for (int i = 0; i < sortedKeys.length; i++) {
+            Assert.assertEquals(99 - i, sortedKeys[i]);
+        }
+        counter.trim(10);
+        Assert.assertEquals(10, counter.size());
+        Assert.assertEquals(99, counter.get(99));
+        Assert.assertEquals(90, counter.get(90));
+        Assert.assertEquals(0, counter.get(89));
+        Assert.assertEquals(945, counter.getTotal());
+    }
+
+    @Test
+    public void testSerialization() {
+        LongCounter counter = new LongCounter();
+        counter.inc(0);
+        counter.inc(-5, 10);
+        counter.inc(Long.MAX_VALUE, 2);
+        String serialized = SerializationUtils.serializeObject(counter);
+        LongCounter deserialized = SerializationUtils.deserializeObject(serialized, LongCounter.class);
+        Assert.assertEquals(3, deserialized.size());
+        Assert.assertEquals(1, deserialized.get(0));
+        Assert.assertEquals(10, deserialized.get(-5));
+        Assert.assertEquals(2, deserialized.get(Long.MAX_VALUE));
+        Assert.assertEquals(13, deserialized.getTotal());
+    }
+
+}
@@ -0,0 +1,84 @@
+package be.bagofwords.counts;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+public class OffHeapMappedCountsTest {
+
+    @Test
+    public void testDirectMemory() throws IOException {
+        OffHeapMappedCounts counts = new OffHeapMappedCounts(10);
+        checkCounts(counts);
+        counts.close();
+    }
+
+    @Test
+    public void testMappedFile() throws IOException {
+        File file = File.createTempFile("offHeapMappedCounts", ".bin");
+        file.deleteOnExit();
+        OffHeapMappedCounts counts = new OffHeapMappedCounts(file, 10000);
+        checkCounts(counts);
+        counts.close();
+    }
+
+    @Test
+    public void testMappedFileIsFull() throws IOException {
+        File file = File.createTempFile("offHeapMappedCounts", ".bin");
+        file.deleteOnExit();
+        OffHeapMappedCounts counts = new OffHeapMappedCounts(file, 100);
+        long key = 1;
+        while (true) {
+            try {
+                counts.inc(key, key);
+                key++;
+            } catch (RuntimeException exp) {
+                break;
+            }
+        }
+        long size = counts.size();
+        Assert.assertTrue(size >= 100);
+        Assert.assertEquals(size, counts.getTotal());
+        //the table is unchanged after a failed insert, and existing keys can still be read and updated
+        for (int i = 0; i < 10; i++) {
+            try {
+                counts.inc(key + i, key + i);
+                Assert.fail("The table should be full");
+            } catch (RuntimeException exp) {
+                //expected
+            }
+        }
+        Assert.assertEquals(size, counts.size());
+        Assert.assertEquals(size, counts.getTotal());
+        Assert.assertEquals(0, counts.get(key, key));
+        counts.inc(1, 1, 2);
+        Assert.assertEquals(3, counts.get(1, 1));
+        counts.close();
+    }
+
+    private void checkCounts(OffHeapMappedCounts counts) {
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 50; j++) {
+                counts.inc(i, j, i + j);
+            }
+        }
+        counts.inc(3, 4);
+        counts.inc(0, 5, 2);
+        counts.inc(0, 0, 3);
+        Assert.assertEquals(5000, counts.size());
+        Assert.assertEquals(3, counts.get(0, 0));
+        Assert.assertEquals(50, counts.get(0).size());
+        Assert.assertEquals(7, counts.get(0).get(5l));
+        Assert.assertEquals(8, counts.get(3, 4));
+        Assert.assertEquals(0, counts.get(100, 0));
+        Assert.assertEquals(50, counts.get(7).size());
+        Assert.assertEquals(7 + 49, counts.get(7).get(49l));
+        Map<Long, Map<Long, Long>> maps = counts.toMaps();
+        Assert.assertEquals(100, maps.size());
+        Assert.assertEquals(8, (long) maps.get(3l).get(4l));
+    }
+
+}
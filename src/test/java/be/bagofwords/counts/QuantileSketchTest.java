@@ -0,0 +1,72 @@
+package be.bagofwords.counts;
+
+import be.bagofwords.util.NumUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class QuantileSketchTest {
+
+    @Test
+    public void testQuantiles() {
+        QuantileSketch sketch = new QuantileSketch();
+        Random random = new Random(3);
+        int numOfValues = 1000000;
+        for (int i = 0; i < numOfValues; i++) {
+            sketch.add(random.nextDouble());
+        }
+        Assert.assertEquals(numOfValues, sketch.getCount());
+        Assert.assertEquals(0.5, sketch.getQuantile(0.5), 0.02);
+        Assert.assertEquals(0.9, sketch.getQuantile(0.9), 0.02);
+        Assert.assertEquals(0.25 * numOfValues, sketch.getRank(0.25), 0.02 * numOfValues);
+    }
+
+    @Test
+    public void testMergedBinComputers() {
+        BinComputer first = BinComputer.createStreaming();
+        BinComputer second = BinComputer.createStreaming();
+        for (int i = 0; i < 100000; i++) {
+            first.addCount(i);
+            second.addCount(100000 + i);
+        }
+        first.addAll(second);
+        double[] borders = first.getEquiDenseBins(4);
+        Assert.assertEquals(3, borders.length);
+        Assert.assertEquals(50000, borders[0], 4000);
+        Assert.assertEquals(100000, borders[1], 4000);
+        Assert.assertEquals(150000, borders[2], 4000);
+        int[] counts = first.getBinCounts(borders);
+        Assert.assertEquals(200000, NumUtils.sum(counts));
+        Assert.assertEquals(50000, counts[0], 4000);
+    }
+
+    @Test
+    public void testLargeBinCounts() {
+        BinComputer first = BinComputer.createStreaming();
+        BinComputer second = BinComputer.createStreaming();
+        for (int i = 0; i < 1000; i++) {
+            first.addCount(i);
+            second.addCount(i);
+        }
+        //the counts grow exponentially while the sketches stay small
+        while (first.getLongBinCounts(new double[0])[0] < 3l * Integer.MAX_VALUE) {
+            first.addAll(second);
+            second.addAll(first);
+        }
+        double[] borders = {500};
+        long[] longCounts = first.getLongBinCounts(borders);
+        Assert.assertTrue(longCounts[0] > Integer.MAX_VALUE);
+        Assert.assertTrue(longCounts[1] > Integer.MAX_VALUE);
+        int[] counts = first.getBinCounts(borders);
+        Assert.assertEquals(Integer.MAX_VALUE, counts[0]);
+        Assert.assertEquals(Integer.MAX_VALUE, counts[1]);
+    }
+
+    @Test
+    public void testEmptyBinComputer() {
+        Assert.assertEquals(0, BinComputer.createStreaming().getEquiWidthBins(4).length);
+        Assert.assertEquals(0, new BinComputer(100).getEquiWidthBins(4).length);
+    }
+
+}
@@ -0,0 +1,35 @@
+package be.bagofwords.counts;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RateMeterTest {
+
+    @Test
+    public void testNoCountsAreLost() throws InterruptedException {
+        final RateMeter rateMeter = new RateMeter(10, 100000);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 200000; j++) {
+                        rateMeter.addCount();
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(1600000, rateMeter.getTotalCounts());
+        Assert.assertEquals(1600000, rateMeter.getCounts(RateMeter.FIVE_MINUTES));
+        Assert.assertTrue(rateMeter.getNeededTime(1000) < Long.MAX_VALUE);
+    }
+
+}
@@ -0,0 +1,76 @@
+package be.bagofwords.counts;
+
+import be.bagofwords.util.SerializationUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SparseVectorTest {
+
+    @Test
+    public void testAddAndGet() {
+        SparseVector vector = new SparseVector();
+        vector.addValue(5, 1f);
+        vector.addValue(2, 2f);
+        vector.addValue(5, 3f);
+        vector.addValue(-1, 1f);
+        Assert.assertEquals(3, vector.size);
+        Assert.assertEquals(4.0, vector.get(5), 0.0001);
+        Assert.assertEquals(2.0, vector.get(2), 0.0001);
+        Assert.assertEquals(0.0, vector.get(3), 0.0001);
+        Assert.assertArrayEquals(new int[]{-1, 2, 5}, java.util.Arrays.copyOf(vector.inds, vector.size));
+    }
+
+    @Test
+    public void testAppendAndOperations() {
+        SparseVector first = new SparseVector();
+        first.append(10, 1f);
+        first.append(3, 2f);
+        first.append(10, 1f);
+        SparseVector second = new SparseVector();
+        second.append(3, 4f);
+        second.append(7, 1f);
+        first.compact();
+        second.compact();
+        Assert.assertEquals(2.0, first.get(10), 0.0001);
+        Assert.assertEquals(8.0, first.dot(second), 0.0001);
+        Assert.assertEquals(8.0 / (Math.sqrt(8) * Math.sqrt(17)), first.cosine(second), 0.0001);
+        first.axpy(0.5, second);
+        Assert.assertEquals(4.0, first.get(3), 0.0001);
+        Assert.assertEquals(0.5, first.get(7), 0.0001);
+        Assert.assertEquals(3, first.size);
+        first.trim(2);
+        Assert.assertEquals(2, first.size);
+        Assert.assertEquals(0.0, first.get(7), 0.0001);
+        Assert.assertEquals(4.0, first.get(3), 0.0001);
+        Assert.assertEquals(2.0, first.get(10), 0.0001);
+        first.trim(0);
+        Assert.assertEquals(0, first.size);
+        Assert.assertEquals(0.0, first.get(3), 0.0001);
+        first.addValue(5, 1f);
+        Assert.assertEquals(1.0, first.get(5), 0.0001);
+    }
+
+    @Test
+    public void testSerialization() {
+        SparseVector vector = new SparseVector();
+        vector.append(3, 1f);
+        vector.append(1, 2f);
+        vector.append(3, 1f);
+        String serialized = SerializationUtils.serializeObject(vector);
+        SparseVector deserialized = SerializationUtils.deserializeObject(serialized, SparseVector.class);
+        Assert.assertEquals(2, deserialized.size);
+        Assert.assertEquals(2.0, deserialized.get(1), 0.0001);
+        Assert.assertEquals(2.0, deserialized.get(3), 0.0001);
+        SparseVector decoded = SerializationUtils.bytesToObject(SerializationUtils.objectToBytes(vector, SparseVector.class), SparseVector.class);
+        Assert.assertEquals(2.0, decoded.get(3), 0.0001);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testReadUnsortedVector() {
+        SparseVector vector = new SparseVector();
+        vector.append(3, 1f);
+        vector.append(1, 2f);
+        vector.get(1);
+    }
+
+}
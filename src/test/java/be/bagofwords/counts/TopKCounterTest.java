@@ -0,0 +1,57 @@
+package be.bagofwords.counts;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+public class TopKCounterTest {
+
+    @Test
+    public void testHeavyHittersAreFound() {
+        TopKCounter<Integer> counter = new TopKCounter<>(20);
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            if (i % 4 == 0) {
+                counter.inc(-1);
+            } else if (i % 10 == 1) {
+                counter.inc(-2);
+            } else {
+                counter.inc(random.nextInt(10000));
+            }
+        }
+        Assert.assertEquals(100000, counter.getTotal());
+        Assert.assertEquals(20, counter.size());
+        List<Integer> sortedKeys = counter.sortedKeys();
+        Assert.assertEquals(-1, (int) sortedKeys.get(0));
+        Assert.assertEquals(-2, (int) sortedKeys.get(1));
+        Assert.assertTrue(counter.getGuaranteedCount(-1) <= 25000);
+        Assert.assertTrue(counter.get(-1) >= 25000);
+        Assert.assertTrue(counter.getError(-1) <= counter.getTotal() / counter.getK());
+    }
+
+    @Test
+    public void testMerge() {
+        TopKCounter<String> first = new TopKCounter<>(3);
+        TopKCounter<String> second = new TopKCounter<>(3);
+        first.inc("a", 10);
+        first.inc("b", 5);
+        second.inc("a", 7);
+        second.inc("c", 8);
+        first.addAll(second);
+        Assert.assertEquals(17, first.get("a"));
+        Assert.assertEquals(0, first.getError("a"));
+        Assert.assertEquals(8, first.get("c"));
+        Assert.assertEquals(30, first.getTotal());
+        Assert.assertEquals(3, first.size());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testNegativeCount() {
+        TopKCounter<String> counter = new TopKCounter<>(3);
+        counter.inc("a", 10);
+        counter.inc("a", -5);
+    }
+
+}
@@ -0,0 +1,84 @@
+package be.bagofwords.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BufferPoolTest {
+
+    @After
+    public void disableDebug() {
+        BufferPool.setDebug(false);
+    }
+
+    @Test
+    public void testReuse() {
+        byte[] buffer = BufferPool.lease(1000);
+        Assert.assertEquals(1024, buffer.length);
+        BufferPool.release(buffer);
+        Assert.assertSame(buffer, BufferPool.lease(600));
+        BufferPool.release(buffer);
+        Assert.assertNotSame(buffer, BufferPool.lease(2000));
+    }
+
+    @Test
+    public void testSizeClasses() {
+        Assert.assertEquals(64, BufferPool.lease(0).length);
+        Assert.assertEquals(64, BufferPool.lease(64).length);
+        Assert.assertEquals(128, BufferPool.lease(65).length);
+        Assert.assertEquals(1 << 20, BufferPool.lease((1 << 20) - 1).length);
+        byte[] oversized = BufferPool.lease((1 << 20) + 1);
+        Assert.assertEquals((1 << 20) + 1, oversized.length);
+        BufferPool.release(oversized);
+        Assert.assertNotSame(oversized, BufferPool.lease((1 << 20) + 1));
+    }
+
+    @Test
+    public void testRetainedBytesAreLimited() throws InterruptedException {
+        //run on a new thread, so the pool is empty
+        final boolean[] success = new boolean[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                byte[][] buffers = new byte[4][];
+                for (int i = 0; i < buffers.length; i++) {
+                    buffers[i] = BufferPool.lease(1 << 20);
+                }
+                byte[] small = BufferPool.lease(100);
+                for (byte[] buffer : buffers) {
+                    BufferPool.release(buffer);
+                }
+                //the pool of this thread holds 4 MB, the small buffer does not fit anymore
+                BufferPool.release(small);
+                boolean result = small != BufferPool.lease(100);
+                for (int i = buffers.length - 1; i >= 0; i--) {
+                    result &= buffers[i] == BufferPool.lease(1 << 20);
+                }
+                success[0] = result;
+            }
+        };
+        thread.start();
+        thread.join();
+        Assert.assertTrue(success[0]);
+    }
+
+    @Test
+    public void testLeakDetection() {
+        BufferPool.setDebug(true);
+        byte[] released = BufferPool.lease(100);
+        BufferPool.release(released);
+        Assert.assertTrue(BufferPool.getLeakedBuffers().isEmpty());
+        BufferPool.lease(100);
+        Assert.assertEquals(1, BufferPool.getLeakedBuffers().size());
+        Assert.assertEquals("testLeakDetection", BufferPool.getLeakedBuffers().get(0).getStackTrace()[1].getMethodName());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDoubleRelease() {
+        BufferPool.setDebug(true);
+        byte[] buffer = BufferPool.lease(100);
+        BufferPool.release(buffer);
+        BufferPool.release(buffer);
+    }
+
+}
@@ -0,0 +1,132 @@
+package be.bagofwords.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+public class CompressionCodecsTest {
+
+    private static final CompressionCodec[] CODECS = {CompressionCodecs.DEFLATE, CompressionCodecs.LZ4, CompressionCodecs.SNAPPY};
+
+    @Test
+    public void testRoundTrip() {
+        for (CompressionCodec codec : CODECS) {
+            for (byte[] input : createInputs()) {
+                byte[] compressed = codec.compress(input);
+                assertArrayEquals(codec.getClass().getSimpleName(), input, codec.uncompress(compressed));
+                assertArrayEquals(codec.getClass().getSimpleName(), input, IOUtils.uncompressBytes(IOUtils.compressBytes(input, codec)));
+            }
+        }
+    }
+
+    @Test
+    public void testCompressesRepetitiveData() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            text.append("word").append(i % 100).append(' ');
+        }
+        byte[] input = text.toString().getBytes();
+        for (CompressionCodec codec : CODECS) {
+            byte[] compressed = codec.compress(input);
+            assertTrue(codec.getClass().getSimpleName() + " " + compressed.length, compressed.length < input.length / 4);
+        }
+    }
+
+    @Test
+    public void testRegion() {
+        byte[] input = "xxxxabcabcabcabcabcabcabcabcabcabcabcabcyyyy".getBytes();
+        byte[] expected = "abcabcabcabcabcabcabcabcabcabcabcabc".getBytes();
+        for (CompressionCodec codec : CODECS) {
+            byte[] compressed = codec.compress(input, 4, expected.length);
+            byte[] padded = new byte[compressed.length + 6];
+            System.arraycopy(compressed, 0, padded, 3, compressed.length);
+            assertArrayEquals(expected, codec.uncompress(padded, 3, compressed.length));
+        }
+    }
+
+    @Test
+    public void testLegacyDeflateFormat() {
+        byte[] input = "This value was compressed with the old implementation of compressBytes".getBytes();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(input);
+        deflater.finish();
+        byte[] buffer = new byte[1024];
+        int length = deflater.deflate(buffer);
+        deflater.end();
+        byte[] compressed = new byte[length];
+        System.arraycopy(buffer, 0, compressed, 0, length);
+        assertArrayEquals(input, IOUtils.uncompressBytes(compressed));
+        assertArrayEquals(IOUtils.compressBytes(input), IOUtils.compressBytes(input, CompressionCodecs.DEFLATE));
+    }
+
+    @Test
+    public void testStreams() throws IOException {
+        byte[] input = createInputs().get(4);
+        for (CompressionCodec codec : CODECS) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            OutputStream os = codec.createOutputStream(bos, 1000);
+            os.write(input, 0, 10);
+            os.write(input[10]);
+            os.write(input, 11, input.length - 11);
+            os.close();
+            InputStream is = codec.createInputStream(new ByteArrayInputStream(bos.toByteArray()));
+            byte[] result = new byte[input.length];
+            int numOfBytesRead = 0;
+            while (numOfBytesRead < result.length) {
+                int count = is.read(result, numOfBytesRead, result.length - numOfBytesRead);
+                assertTrue(count > 0);
+                numOfBytesRead += count;
+            }
+            assertEquals(-1, is.read());
+            assertArrayEquals(input, result);
+        }
+    }
+
+    @Test
+    public void testSerializationUtils() {
+        List<String> value = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            value.add("value " + (i % 10));
+        }
+        for (CompressionCodec codec : CODECS) {
+            byte[] bytes = SerializationUtils.objectToCompressedBytes(value, (Class) List.class, codec);
+            assertEquals(value, SerializationUtils.compressedBytesToObject(bytes, List.class));
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testCorruptInput() {
+        byte[] compressed = CompressionCodecs.LZ4.compress("abcabcabcabcabcabcabcabcabc".getBytes());
+        compressed[compressed.length - 3] = 127;
+        CompressionCodecs.LZ4.uncompress(compressed, 0, compressed.length - 2);
+    }
+
+    private List<byte[]> createInputs() {
+        Random random = new Random(42);
+        List<byte[]> result = new ArrayList<>();
+        result.add(new byte[0]);
+        result.add(new byte[]{1});
+        result.add("abcdabcdabcdab".getBytes());
+        byte[] randomBytes = new byte[100000];
+        random.nextBytes(randomBytes);
+        result.add(randomBytes);
+        byte[] mixed = new byte[300000];
+        for (int i = 0; i < mixed.length; i++) {
+            mixed[i] = (byte) (random.nextInt(10) == 0 ? random.nextInt() : (i % 37));
+        }
+        result.add(mixed);
+        result.add(new byte[200000]);
+        return result;
+    }
+
+}
@@ -6,6 +6,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -66,6 +67,89 @@ public class ExtendedDataOutputInputStreamTest {
         assertTrue(isEndOfStream(is));
     }
 
+    @Test
+    public void testLargeArrays() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ExtendedDataOutputStream os = new ExtendedDataOutputStream(bos);
+        Random random = new Random(1);
+        long[] longArray = new long[10001];
+        int[] intArray = new int[5003];
+        double[] doubleArray = new double[3001];
+        for (int i = 0; i < longArray.length; i++) {
+            longArray[i] = random.nextLong();
+        }
+        for (int i = 0; i < intArray.length; i++) {
+            intArray[i] = random.nextInt();
+        }
+        for (int i = 0; i < doubleArray.length; i++) {
+            doubleArray[i] = random.nextGaussian();
+        }
+        os.write(longArray);
+        os.write(intArray);
+        os.write(doubleArray);
+        os.close();
+        assertEquals(12 + longArray.length * 8 + intArray.length * 4 + doubleArray.length * 8, bos.size());
+        ExtendedDataInputStream is = new ExtendedDataInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        assertArrayEquals(longArray, is.readLongArray());
+        assertArrayEquals(intArray, is.readIntArray());
+        assertArrayEquals(doubleArray, is.readDoubleArray(), 0);
+        assertTrue(isEndOfStream(is));
+    }
+
+    @Test
+    public void testVariableLengthAndDelta() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ExtendedDataOutputStream os = new ExtendedDataOutputStream(bos);
+        long[] longValues = {0, 1, 127, 128, 300, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+        int[] intValues = {0, 1, 127, 128, 300, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+        for (long value : longValues) {
+            os.writeVarLong(value);
+            os.writeSignedVarLong(value);
+        }
+        for (int value : intValues) {
+            os.writeVarInt(value);
+            os.writeSignedVarInt(value);
+        }
+        long[] sortedLongs = {Long.MIN_VALUE, -5, 0, 0, 3, 1000, Long.MAX_VALUE};
+        int[] sortedInts = {Integer.MIN_VALUE, -5, 0, 0, 3, 1000, Integer.MAX_VALUE};
+        os.writeSortedLongsDelta(sortedLongs);
+        os.writeSortedIntsDelta(sortedInts);
+        os.writeSortedLongsDelta(new long[0]);
+        os.close();
+        ExtendedDataInputStream is = new ExtendedDataInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        for (long value : longValues) {
+            assertEquals(value, is.readVarLong());
+            assertEquals(value, is.readSignedVarLong());
+        }
+        for (int value : intValues) {
+            assertEquals(value, is.readVarInt());
+            assertEquals(value, is.readSignedVarInt());
+        }
+        assertArrayEquals(sortedLongs, is.readSortedLongsDelta());
+        assertArrayEquals(sortedInts, is.readSortedIntsDelta());
+        assertArrayEquals(new long[0], is.readSortedLongsDelta());
+        assertTrue(isEndOfStream(is));
+    }
+
+    @Test
+    public void testDeltaEncodingIsCompact() throws IOException {
+        long[] values = new long[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1000000000000l + i * 3;
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ExtendedDataOutputStream os = new ExtendedDataOutputStream(bos);
+        os.writeSortedLongsDelta(values);
+        os.close();
+        assertTrue(bos.size() < values.length + 20);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testUnsortedDelta() throws IOException {
+        ExtendedDataOutputStream os = new ExtendedDataOutputStream(new ByteArrayOutputStream());
+        os.writeSortedLongsDelta(new long[]{3, 2});
+    }
+
     private boolean isEndOfStream(ExtendedDataInputStream is) throws IOException {
         try {
             is.readByte();
@@ -0,0 +1,92 @@
+package be.bagofwords.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class KeyValueBlockTest {
+
+    @Test
+    public void testFixedWidthValues() {
+        Random random = new Random(1);
+        List<KeyValue<Long>> values = new ArrayList<>();
+        long key = Long.MIN_VALUE + 10;
+        for (int i = 0; i < 1000; i++) {
+            key += 1 + random.nextInt(1000);
+            values.add(new KeyValue<>(key, i % 7 == 0 ? null : random.nextLong()));
+        }
+        byte[] bytes = KeyValueBlock.encode(values, Long.class);
+        Assert.assertTrue(bytes.length < values.size() * 11);
+        KeyValueBlock<Long> block = new KeyValueBlock<>(bytes, Long.class);
+        Assert.assertEquals(values.size(), block.size());
+        long[] keys = new long[values.size()];
+        for (int i = 0; i < values.size(); i++) {
+            keys[i] = values.get(i).getKey();
+            Assert.assertEquals(keys[i], block.getKey(i));
+            Assert.assertEquals(values.get(i).getValue(), block.getValue(i));
+            Assert.assertEquals(values.get(i).getValue(), block.get(keys[i]));
+        }
+        for (int i = 0; i < 2000; i++) {
+            long searchKey = keys[random.nextInt(keys.length)] + random.nextInt(3) - 1;
+            Assert.assertEquals(Arrays.binarySearch(keys, searchKey), block.indexOf(searchKey));
+        }
+        Assert.assertEquals(-1, block.indexOf(Long.MIN_VALUE));
+        Assert.assertEquals(-keys.length - 1, block.indexOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testVariableWidthValues() {
+        List<KeyValue<String>> values = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            values.add(new KeyValue<>(i * 3l, i == 50 ? null : "value " + i));
+        }
+        byte[] bytes = KeyValueBlock.encode(values, String.class);
+        byte[] padded = new byte[bytes.length + 10];
+        System.arraycopy(bytes, 0, padded, 5, bytes.length);
+        KeyValueBlock<String> block = new KeyValueBlock<>(padded, 5, bytes.length, String.class);
+        Assert.assertEquals("value 3", block.get(9));
+        Assert.assertNull(block.get(150));
+        Assert.assertTrue(block.contains(150));
+        Assert.assertFalse(block.contains(10));
+        List<KeyValue<String>> decoded = block.getKeyValues();
+        for (int i = 0; i < values.size(); i++) {
+            Assert.assertEquals(values.get(i).getKey(), decoded.get(i).getKey());
+            Assert.assertEquals(values.get(i).getValue(), decoded.get(i).getValue());
+        }
+        Assert.assertArrayEquals(bytes, block.toByteArray());
+    }
+
+    @Test
+    public void testPresenceBitmap() {
+        List<KeyValue<Long>> longValues = new ArrayList<>();
+        List<KeyValue<String>> stringValues = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            longValues.add(new KeyValue<>(i, i % 3 == 0 ? null : i % 3 == 1 ? SerializationUtils.LONG_NULL : (long) i));
+            stringValues.add(new KeyValue<>(i, i % 3 == 0 ? null : i % 3 == 1 ? SerializationUtils.bytesToString(SerializationUtils.STRING_NULL) : "value " + i));
+        }
+        KeyValueBlock<Long> longBlock = new KeyValueBlock<>(KeyValueBlock.encode(longValues, Long.class, NullEncoding.PRESENCE_TAG), Long.class);
+        KeyValueBlock<String> stringBlock = new KeyValueBlock<>(KeyValueBlock.encode(stringValues, String.class, NullEncoding.PRESENCE_TAG), String.class);
+        for (int i = 0; i < 50; i++) {
+            Assert.assertEquals(longValues.get(i).getValue(), longBlock.get(i));
+            Assert.assertEquals(stringValues.get(i).getValue(), stringBlock.get(i));
+        }
+    }
+
+    @Test
+    public void testEmptyBlock() {
+        KeyValueBlock<Double> block = new KeyValueBlock<>(KeyValueBlock.encode(new ArrayList<KeyValue<Double>>(), Double.class), Double.class);
+        Assert.assertEquals(0, block.size());
+        Assert.assertEquals(-1, block.indexOf(42));
+        Assert.assertNull(block.get(42));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testUnsortedKeys() {
+        KeyValueBlock.encode(Arrays.asList(new KeyValue<>(2, 1.0), new KeyValue<>(1, 2.0)), Double.class);
+    }
+
+}
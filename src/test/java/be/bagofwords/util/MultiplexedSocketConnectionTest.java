@@ -0,0 +1,120 @@
+package be.bagofwords.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class MultiplexedSocketConnectionTest {
+
+    private ExecutorService executor;
+    private NioSocketServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        executor = Executors.newFixedThreadPool(4);
+        server = new NioSocketServer(0, 1, new MultiplexedSocketHandler(executor) {
+            @Override
+            protected byte[] processRequest(byte[] request) throws Exception {
+                long value = SerializationUtils.bytesToLong(request);
+                if (value < 0) {
+                    throw new RuntimeException("Negative value " + value);
+                }
+                if (value % 10 == 0) {
+                    //slow requests should not block the other requests
+                    Thread.sleep(5);
+                }
+                return SerializationUtils.longToBytes(value * 2);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        final MultiplexedSocketConnection connection = new MultiplexedSocketConnection("localhost", server.getPort());
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int thread = t;
+            results.add(clients.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    List<CompletableFuture<Long>> responses = new ArrayList<>();
+                    for (int i = 0; i < 250; i++) {
+                        responses.add(connection.sendRequest(SerializationUtils.longToBytes(thread * 1000 + i), Long.class));
+                    }
+                    for (int i = 0; i < responses.size(); i++) {
+                        Assert.assertEquals(2 * (thread * 1000 + i), responses.get(i).get(10, TimeUnit.SECONDS).longValue());
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        clients.shutdown();
+        Assert.assertEquals(0, connection.getNumOfPendingRequests());
+        connection.close();
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        MultiplexedSocketConnection connection = new MultiplexedSocketConnection("localhost", server.getPort());
+        CompletableFuture<byte[]> error = connection.sendRequest(SerializationUtils.longToBytes(-1));
+        CompletableFuture<byte[]> response = connection.sendRequest(SerializationUtils.longToBytes(1));
+        try {
+            error.get(10, TimeUnit.SECONDS);
+            Assert.fail("Expected an error");
+        } catch (ExecutionException exp) {
+            Assert.assertEquals("Negative value -1", exp.getCause().getMessage());
+        }
+        Assert.assertEquals(2, SerializationUtils.bytesToLong(response.get(10, TimeUnit.SECONDS)));
+        connection.close();
+        Assert.assertFalse(connection.isOpen());
+    }
+
+    @Test
+    public void testWriteFailureClosesConnection() throws Exception {
+        //server that accepts the connection but never answers
+        ServerSocket serverSocket = new ServerSocket(0);
+        SocketConnection socketConnection = new SocketConnection("localhost", serverSocket.getLocalPort(), false, false);
+        Socket serverSide = serverSocket.accept();
+        MultiplexedSocketConnection connection = new MultiplexedSocketConnection(socketConnection);
+        CompletableFuture<byte[]> pending = connection.sendRequest(SerializationUtils.longToBytes(1));
+        socketConnection.getSocket().shutdownOutput();
+        try {
+            connection.sendRequest(SerializationUtils.longToBytes(2));
+            Assert.fail("Expected a write failure");
+        } catch (IOException exp) {
+            //expected
+        }
+        Assert.assertFalse(connection.isOpen());
+        Assert.assertTrue(pending.isCompletedExceptionally());
+        Assert.assertEquals(0, connection.getNumOfPendingRequests());
+        connection.close();
+        serverSide.close();
+        serverSocket.close();
+    }
+
+}
@@ -0,0 +1,146 @@
+package be.bagofwords.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class NioSocketServerTest {
+
+    private NioSocketServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new NioSocketServer(0, 2, new NioSocketHandler() {
+            @Override
+            public void handleRequest(NioSocketConnection connection) throws IOException {
+                String action = connection.readString();
+                if (action.equals("double")) {
+                    long value = connection.readLong();
+                    connection.writeLong(value * 2);
+                } else if (action.equals("echo")) {
+                    String value = connection.readValue(String.class);
+                    connection.writeValue(value, String.class);
+                } else if (action.equals("echoLongs")) {
+                    connection.writeValues(connection.readValues(Long.class), Long.class);
+                } else if (action.equals("echoStrings")) {
+                    connection.writeValues(connection.readValues(String.class), String.class);
+                } else {
+                    connection.writeError("Unknown action " + action);
+                }
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void testBlockingClients() throws IOException {
+        List<SocketConnection> connections = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            connections.add(new SocketConnection("localhost", server.getPort()));
+        }
+        for (int i = 0; i < connections.size(); i++) {
+            SocketConnection connection = connections.get(i);
+            connection.writeString("double");
+            connection.writeLong(i);
+            Assert.assertEquals(i * 2, connection.readLong());
+        }
+        StringBuilder largeValue = new StringBuilder();
+        while (largeValue.length() < 2 * 1024 * 1024) {
+            largeValue.append("a large value that will be compressed ");
+        }
+        SocketConnection connection = connections.get(0);
+        for (String value : new String[]{"small value", largeValue.toString()}) {
+            connection.writeString("echo");
+            connection.writeValue(value, String.class);
+            Assert.assertEquals(value, connection.readValue(String.class));
+        }
+        connection.writeString("unknown");
+        try {
+            connection.readLong();
+            Assert.fail("Expected an error");
+        } catch (SocketConnection.ReceivedException exp) {
+            Assert.assertEquals("Unknown action unknown", exp.getMessage());
+        }
+        for (SocketConnection curr : connections) {
+            curr.close();
+        }
+    }
+
+    @Test
+    public void testTooLargeRequest() throws IOException {
+        Socket socket = new Socket("localhost", server.getPort());
+        DataOutputStream os = new DataOutputStream(socket.getOutputStream());
+        os.writeBoolean(true);
+        os.writeBoolean(false);
+        os.writeInt(Integer.MAX_VALUE - 10);
+        os.flush();
+        Assert.assertEquals(-1, socket.getInputStream().read());
+        socket.close();
+        SocketConnection connection = new SocketConnection("localhost", server.getPort());
+        connection.writeString("double");
+        connection.writeLong(21);
+        Assert.assertEquals(42, connection.readLong());
+        connection.close();
+    }
+
+    @Test
+    public void testValues() throws IOException {
+        List<Long> longs = new ArrayList<>();
+        for (long i = 0; i < 200000; i++) {
+            longs.add(i % 1000 == 0 ? null : i * i);
+        }
+        List<String> strings = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            strings.add(i == 50 ? null : "value " + i);
+        }
+        SocketConnection connection = new SocketConnection("localhost", server.getPort());
+        connection.writeString("echoLongs");
+        connection.writeValues(longs, Long.class);
+        Assert.assertEquals(longs, connection.readValues(Long.class));
+        connection.writeString("echoStrings");
+        connection.writeValues(strings, String.class);
+        Assert.assertEquals(strings, connection.readValues(String.class));
+        connection.writeString("echoStrings");
+        connection.writeValues(new ArrayList<String>(), String.class);
+        Assert.assertTrue(connection.readValues(String.class).isEmpty());
+        connection.close();
+    }
+
+    @Test
+    public void testNonBlockingClient() throws Exception {
+        final BlockingQueue<Long> responses = new ArrayBlockingQueue<>(100);
+        NioSocketClient client = new NioSocketClient(1);
+        NioSocketConnection connection = client.connect("localhost", server.getPort(), new NioSocketHandler() {
+            @Override
+            public void handleRequest(NioSocketConnection connection) throws IOException {
+                responses.add(connection.readLong());
+            }
+        });
+        for (int i = 0; i < 100; i++) {
+            connection.writeString("double");
+            connection.writeLong(i);
+        }
+        connection.flush();
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(i * 2, responses.poll(10, TimeUnit.SECONDS).longValue());
+        }
+        connection.close();
+        client.close();
+    }
+
+}
@@ -1,9 +1,15 @@
 package be.bagofwords.util;
 
+import be.bagofwords.counts.CountMinSketch;
+import be.bagofwords.counts.Counter;
 import org.junit.Assert;
 import org.junit.Test;
 
-import java.util.Date;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
 
 /**
  * Created by Koen Deschacht (koendeschacht@gmail.com) on 9/19/14.
@@ -54,6 +60,144 @@ public class SerializationUtilsTest {
         Assert.assertEquals(objectToCompress, decompressedString);
     }
 
+    @Test
+    public void testCodecs() {
+        Counter<String> counter = new Counter<>();
+        counter.inc("first", 3);
+        counter.inc("second");
+        Counter<String> convertedCounter = SerializationUtils.bytesToObjectCheckForNull(SerializationUtils.objectToBytesCheckForNull(counter, Counter.class), Counter.class);
+        Assert.assertEquals(3, convertedCounter.get("first"));
+        Assert.assertEquals(4, convertedCounter.getTotal());
+        checkConversion(new Pair<>(1l, "value"), Pair.class);
+        checkConversion(Arrays.asList(1, null, "2"), List.class);
+        checkConversion(new HashMap<>(Collections.singletonMap("key", 2.0)), HashMap.class);
+        long[] longs = {1, 2, Long.MIN_VALUE};
+        Assert.assertArrayEquals(longs, SerializationUtils.bytesToObject(SerializationUtils.objectToBytes(longs, long[].class), long[].class));
+        KeyValue<String> keyValue = SerializationUtils.bytesToObjectCheckForNull(SerializationUtils.objectToBytesCheckForNull(new KeyValue<>(10, "value"), KeyValue.class), KeyValue.class);
+        Assert.assertEquals(10, keyValue.getKey());
+        Assert.assertEquals("value", keyValue.getValue());
+    }
+
+    @Test
+    public void testCodecsReadAsOtherClass() {
+        ArrayList<Long> list = new ArrayList<>(Arrays.asList(1l, 2l));
+        byte[] listBytes = SerializationUtils.objectToBytes(list, ArrayList.class);
+        Assert.assertEquals(list, SerializationUtils.bytesToObject(listBytes, Collection.class));
+        Assert.assertEquals(list, SerializationUtils.bytesToObject(listBytes, Object.class));
+        Assert.assertEquals(list, SerializationUtils.bytesToObject(listBytes, LinkedList.class));
+        HashMap<String, Long> map = new HashMap<>(Collections.singletonMap("key", 3l));
+        LinkedHashMap<String, Long> linkedMap = SerializationUtils.bytesToObject(SerializationUtils.objectToBytes(map, HashMap.class), LinkedHashMap.class);
+        Assert.assertEquals(map, linkedMap);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testBuiltInCodecIdsCanNotBeRegistered() {
+        Codecs.register(Pair.class, 2, Codecs.getCodec(Pair.class));
+    }
+
+    @Test
+    public void testValuesWrittenAsJsonCanStillBeRead() {
+        Pair<String, String> pair = new Pair<>("first", "second");
+        byte[] jsonBytes = SerializationUtils.stringToBytes(SerializationUtils.serializeObject(pair));
+        Assert.assertEquals(pair, SerializationUtils.bytesToObjectCheckForNull(jsonBytes, Pair.class, String.class, String.class));
+    }
+
+    @Test
+    public void testDecodeFromRegion() {
+        checkConversionInRegion("some string", String.class);
+        checkConversionInRegion(null, String.class);
+        checkConversionInRegion(TestEnum.SECOND_VALUE, TestEnum.class);
+        checkConversionInRegion(new Pair<>("first", 2), Pair.class);
+        checkConversionInRegion(new Date(1000), Date.class);
+        CountMinSketch sketch = new CountMinSketch(0.1, 0.1);
+        sketch.inc(5, 3);
+        byte[] bytes = SerializationUtils.objectToBytesCheckForNull(sketch, CountMinSketch.class);
+        byte[] region = new byte[bytes.length + 7];
+        System.arraycopy(bytes, 0, region, 3, bytes.length);
+        CountMinSketch converted = SerializationUtils.bytesToObjectCheckForNull(region, 3, bytes.length, CountMinSketch.class);
+        Assert.assertEquals(3, converted.get(5));
+    }
+
+    @Test
+    public void testByteBuffers() {
+        long[] longs = {1, -1, Long.MAX_VALUE, 1234567890123l};
+        int[] ints = {1, -1, Integer.MIN_VALUE};
+        double[] doubles = {0.5, -3.0, Double.MAX_VALUE};
+        for (ByteBuffer buffer : Arrays.asList(ByteBuffer.allocate(100), ByteBuffer.allocateDirect(100).order(ByteOrder.LITTLE_ENDIAN))) {
+            SerializationUtils.longsToBytes(longs, buffer, 3);
+            long[] readLongs = new long[longs.length];
+            SerializationUtils.bytesToLongs(buffer, 3, readLongs);
+            Assert.assertArrayEquals(longs, readLongs);
+            Assert.assertEquals(longs[2], SerializationUtils.bytesToLong(buffer, 3 + 16));
+            SerializationUtils.intsToBytes(ints, buffer, 50);
+            Assert.assertEquals(ints[2], SerializationUtils.bytesToInt(buffer, 58));
+            SerializationUtils.doublesToBytes(doubles, buffer, 70);
+            double[] readDoubles = new double[doubles.length];
+            SerializationUtils.bytesToDoubles(buffer, 70, readDoubles);
+            Assert.assertArrayEquals(doubles, readDoubles, 0.0);
+            SerializationUtils.longToBytes(-5l, buffer, 0);
+            Assert.assertEquals(-5l, SerializationUtils.bytesToLong(buffer, 0));
+            Assert.assertEquals(0, buffer.position());
+        }
+        byte[] bytes = SerializationUtils.longsToBytes(longs);
+        Assert.assertEquals(longs[3], SerializationUtils.bytesToLong(bytes, 24));
+        Assert.assertArrayEquals(ints, SerializationUtils.bytesToInts(SerializationUtils.intsToBytes(ints), 0, ints.length));
+    }
+
+    @Test
+    public void testJsonReadersAndWriters() {
+        Map<String, Long> map = new HashMap<>();
+        map.put("first", 1l);
+        map.put("second", 2l);
+        byte[] bytes = SerializationUtils.serializeObjectToBytes(map);
+        Assert.assertArrayEquals(SerializationUtils.stringToBytes(SerializationUtils.serializeObject(map)), bytes);
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals(map, SerializationUtils.deserializeObject(bytes, 0, bytes.length, HashMap.class, String.class, Long.class));
+        }
+        String mapAsString = SerializationUtils.serializeObject(map, true);
+        Map<String, Long> readMap = SerializationUtils.deserializeObject(mapAsString, HashMap.class, String.class, Long.class);
+        Assert.assertEquals(Long.valueOf(2l), readMap.get("second"));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        SerializationUtils.writeObject(map, bos);
+        Map<String, Long> streamedMap = SerializationUtils.readObject(HashMap.class, new ByteArrayInputStream(bos.toByteArray()), String.class, Long.class);
+        Assert.assertEquals(map, streamedMap);
+    }
+
+    @Test
+    public void testPresenceTagEncoding() {
+        checkPresenceTagConversion(SerializationUtils.LONG_NULL, Long.class);
+        checkPresenceTagConversion(SerializationUtils.DOUBLE_NULL, Double.class);
+        checkPresenceTagConversion(SerializationUtils.INT_NULL, Integer.class);
+        checkPresenceTagConversion(SerializationUtils.FLOAT_NULL, Float.class);
+        checkPresenceTagConversion(SerializationUtils.bytesToString(SerializationUtils.STRING_NULL), String.class);
+        checkPresenceTagConversion(TestEnum.SECOND_VALUE, TestEnum.class);
+        checkPresenceTagConversion(Arrays.asList("first", "second"), List.class);
+        checkPresenceTagConversion(null, Long.class);
+        checkPresenceTagConversion(null, String.class);
+        checkPresenceTagConversion(-5l, Long.class);
+        checkPresenceTagConversion("", String.class);
+        Assert.assertEquals(9, SerializationUtils.objectToBytesCheckForNull(3l, Long.class, NullEncoding.PRESENCE_TAG).length);
+        Assert.assertEquals(NullEncoding.PRESENCE_TAG, NullEncoding.forVersion(NullEncoding.PRESENCE_TAG.getVersion()));
+        //the original encoding is still available
+        byte[] bytes = SerializationUtils.objectToBytesCheckForNull(null, Long.class, NullEncoding.SENTINEL);
+        Assert.assertEquals(SerializationUtils.LONG_NULL, SerializationUtils.bytesToLong(bytes));
+    }
+
+    private void checkPresenceTagConversion(Object obj, Class objectClass) {
+        byte[] bytes = SerializationUtils.objectToBytesCheckForNull(obj, objectClass, NullEncoding.PRESENCE_TAG);
+        byte[] region = new byte[bytes.length + 4];
+        System.arraycopy(bytes, 0, region, 2, bytes.length);
+        Assert.assertEquals(obj, SerializationUtils.bytesToObjectCheckForNull(region, 2, bytes.length, objectClass, NullEncoding.PRESENCE_TAG));
+    }
+
+    private void checkConversionInRegion(Object obj, Class objectClass) {
+        byte[] bytes = SerializationUtils.objectToBytesCheckForNull(obj, objectClass);
+        byte[] region = new byte[bytes.length + 10];
+        Arrays.fill(region, (byte) 'x');
+        System.arraycopy(bytes, 0, region, 5, bytes.length);
+        Assert.assertEquals(obj, SerializationUtils.bytesToObjectCheckForNull(region, 5, bytes.length, objectClass));
+    }
+
     private void checkConversion(Object obj, Class objectClass) {
         Assert.assertEquals(obj, SerializationUtils.bytesToObjectCheckForNull(SerializationUtils.objectToBytesCheckForNull(obj, objectClass), objectClass));
     }
@@ -0,0 +1,136 @@
+package be.bagofwords.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class SocketConnectionPoolTest {
+
+    private NioSocketServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new NioSocketServer(0, 1, new NioSocketHandler() {
+            @Override
+            public void handleRequest(NioSocketConnection connection) throws IOException {
+                if (connection.getAttachment() == null) {
+                    connection.setAttachment(connection.readString());
+                } else {
+                    long value = connection.readLong();
+                    if (value < 0) {
+                        //simulates a server that drops the connection
+                        connection.close();
+                    } else {
+                        connection.writeString(connection.getAttachment() + " " + value);
+                    }
+                }
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void testReuse() throws IOException {
+        SocketConnectionPool pool = new SocketConnectionPool(0, 2, 60000, 1000);
+        SocketConnection first = pool.borrow("localhost", server.getPort(), "handler1");
+        Assert.assertEquals("handler1 1", call(first, 1));
+        pool.returnConnection(first);
+        SocketConnection second = pool.borrow("localhost", server.getPort(), "handler1");
+        Assert.assertSame(first, second);
+        SocketConnection other = pool.borrow("localhost", server.getPort(), "handler2");
+        Assert.assertNotSame(first, other);
+        Assert.assertEquals("handler2 2", call(other, 2));
+        pool.returnConnection(second);
+        pool.invalidate(other);
+        Assert.assertFalse(other.isOpen());
+        Assert.assertEquals(1, pool.getNumOfIdleConnections());
+        Assert.assertEquals(2, pool.getNumOfConnectionsCreated());
+        Assert.assertEquals(3, pool.getNumOfBorrows());
+        pool.close();
+        Assert.assertFalse(first.isOpen());
+    }
+
+    @Test
+    public void testClosedConnectionsAreNotReused() throws IOException {
+        SocketConnectionPool pool = new SocketConnectionPool(0, 2, 60000, 1000);
+        SocketConnection connection = pool.borrow("localhost", server.getPort(), "handler");
+        pool.returnConnection(connection);
+        connection.close();
+        SocketConnection newConnection = pool.borrow("localhost", server.getPort(), "handler");
+        Assert.assertNotSame(connection, newConnection);
+        Assert.assertEquals("handler 3", call(newConnection, 3));
+        pool.returnConnection(newConnection);
+        pool.close();
+    }
+
+    @Test
+    public void testConnectionsClosedByServerAreNotReused() throws IOException {
+        SocketConnectionPool pool = new SocketConnectionPool(0, 2, 60000, 1000);
+        pool.setValidationIdleTime(0);
+        SocketConnection connection = pool.borrow("localhost", server.getPort(), "handler");
+        Assert.assertEquals("handler 1", call(connection, 1));
+        pool.returnConnection(connection);
+        Assert.assertSame(connection, pool.borrow("localhost", server.getPort(), "handler"));
+        connection.writeLong(-1);
+        connection.flush();
+        pool.returnConnection(connection);
+        Utils.threadSleep(100);
+        Assert.assertTrue(connection.isOpen());
+        SocketConnection newConnection = pool.borrow("localhost", server.getPort(), "handler");
+        Assert.assertNotSame(connection, newConnection);
+        Assert.assertFalse(connection.isOpen());
+        Assert.assertEquals("handler 2", call(newConnection, 2));
+        pool.returnConnection(newConnection);
+        Assert.assertEquals(2, pool.getNumOfConnectionsCreated());
+        Assert.assertEquals(1, pool.getNumOfIdleConnections());
+        pool.close();
+    }
+
+    @Test
+    public void testExhaustion() throws IOException {
+        SocketConnectionPool pool = new SocketConnectionPool(0, 1, 60000, 50);
+        SocketConnection connection = pool.borrow("localhost", server.getPort(), "handler");
+        try {
+            pool.borrow("localhost", server.getPort(), "handler");
+            Assert.fail("Expected a timeout");
+        } catch (IOException exp) {
+            //expected
+        }
+        Assert.assertEquals(1, pool.getNumOfExhaustions());
+        Assert.assertEquals(1, pool.getNumOfTimeouts());
+        pool.returnConnection(connection);
+        Assert.assertSame(connection, pool.borrow("localhost", server.getPort(), "handler"));
+        pool.close();
+    }
+
+    @Test
+    public void testIdleEviction() throws IOException {
+        SocketConnectionPool pool = new SocketConnectionPool(1, 3, 20, 1000);
+        SocketConnection[] connections = new SocketConnection[3];
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = pool.borrow("localhost", server.getPort(), "handler");
+        }
+        for (SocketConnection connection : connections) {
+            pool.returnConnection(connection);
+        }
+        Utils.threadSleep(100);
+        Assert.assertEquals(1, pool.getNumOfIdleConnections());
+        Assert.assertFalse(connections[0].isOpen());
+        Assert.assertTrue(connections[2].isOpen());
+        pool.close();
+    }
+
+    private String call(SocketConnection connection, long value) throws IOException {
+        connection.writeLong(value);
+        return connection.readString();
+    }
+
+}
@@ -0,0 +1,100 @@
+package be.bagofwords.util;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class SocketConnectionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSendFileOverChannel() throws Exception {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(0));
+        //both sockets have a channel, so the file is not copied to user space
+        testSendFile(serverChannel.socket(), false, true, false);
+        serverChannel.close();
+    }
+
+    @Test
+    public void testSendFileOverBufferedStream() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0);
+        testSendFile(serverSocket, true, false, true);
+        serverSocket.close();
+    }
+
+    private void testSendFile(final ServerSocket serverSocket, final boolean buffered, boolean useChannel, boolean checksum) throws Exception {
+        byte[] data = new byte[3 * 1024 * 1024 + 17];
+        new Random(1).nextBytes(data);
+        Path source = folder.newFile("source").toPath();
+        Files.write(source, data);
+        final Path target = folder.getRoot().toPath().resolve("target");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Long> receivedLength = executor.submit(new Callable<Long>() {
+            @Override
+            public Long call() throws IOException {
+                Socket socket = serverSocket.accept();
+                SocketConnection connection = new SocketConnection(socket);
+                if (buffered) {
+                    connection.ensureBuffered();
+                }
+                Assert.assertEquals("file", connection.readString());
+                long length = connection.receiveFile(target);
+                connection.writeBoolean(true);
+                connection.close();
+                return length;
+            }
+        });
+        SocketConnection connection = new SocketConnection("localhost", serverSocket.getLocalPort(), true, true, useChannel);
+        Assert.assertEquals(useChannel, connection.getSocket().getChannel() != null);
+        connection.writeString("file");
+        connection.sendFile(source, 1000, data.length - 2000, checksum);
+        Assert.assertTrue(connection.readBoolean());
+        connection.close();
+        Assert.assertEquals(data.length - 2000, receivedLength.get().longValue());
+        Assert.assertArrayEquals(Arrays.copyOfRange(data, 1000, data.length - 1000), Files.readAllBytes(target));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testEncodeFixedWidthValues() {
+        checkEncodeValues(Arrays.asList(1L, null, -5L, Long.MAX_VALUE), Long.class);
+        checkEncodeValues(Arrays.asList(1.5, null, -5.0), Double.class);
+        checkEncodeValues(Arrays.asList(1, null, Integer.MIN_VALUE), Integer.class);
+        //only the reserved value of the class itself is rejected
+        checkEncodeValues(Arrays.asList(0L, (long) SerializationUtils.INT_NULL), Long.class);
+        checkEncodeValues(Arrays.asList(0.0, (double) SerializationUtils.FLOAT_NULL), Double.class);
+        checkEncodeValues(Arrays.asList(1.5f, null, -5f), Float.class);
+        try {
+            SocketConnection.encodeValues(Arrays.asList(1, SerializationUtils.INT_NULL), Integer.class);
+            Assert.fail("Reserved value should not be accepted");
+        } catch (RuntimeException exp) {
+            //expected
+        }
+    }
+
+    private <T> void checkEncodeValues(List<T> values, Class<T> objectClass) {
+        byte[] encoded = SocketConnection.encodeValues(values, objectClass);
+        Assert.assertEquals(values.size() * SerializationUtils.getWidth(objectClass), encoded.length);
+        Assert.assertEquals(values, SocketConnection.decodeValues(encoded, 0, encoded.length, values.size(), objectClass));
+    }
+
+}